@@ -0,0 +1,45 @@
+package Perf;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import Model.Account;
+
+/**
+ * Account lookups by username, the query behind login.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = { BenchmarkDatabase.DB_URL })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AccountReadBenchmark {
+    private static final int ACCOUNTS = 10000;
+
+    private AccountDAO accountDAO;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        BenchmarkDatabase.seed(ACCOUNTS, 1);
+        accountDAO = new AccountDAO();
+    }
+
+    @Benchmark
+    public Account getAccountByUsername(){
+        return accountDAO.getAccountByUsername("user" + ThreadLocalRandom.current().nextInt(2, ACCOUNTS + 1));
+    }
+}
@@ -0,0 +1,66 @@
+package Perf;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import Util.ConnectionUtil;
+
+/**
+ * Seeds the database the benchmarks run against. Every benchmark forks with {@link #DB_URL}, so they use
+ * a private in-memory H2 database and never touch the file database the application and tests use.
+ */
+public class BenchmarkDatabase {
+    /**
+     * JVM argument that points {@link ConnectionUtil} at an in-memory database.
+     */
+    public static final String DB_URL = "-Ddb.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1";
+
+    /**
+     * Epoch of the first seeded message; each following message is one second newer.
+     */
+    public static final long FIRST_EPOCH = 1669947792L;
+
+    private BenchmarkDatabase(){
+    }
+
+    /**
+     * Used to recreate the tables and fill them. Accounts are named {@code user2}, {@code user3} and so on
+     * after the {@code testuser1} account the schema script creates, and the messages are spread evenly
+     * over every account.
+     * @param accounts Take in the {@code int} number of accounts the table should hold, at least 1.
+     * @param messages Take in the {@code int} number of messages the table should hold, at least 1.
+     */
+    public static void seed(int accounts, int messages){
+        ConnectionUtil.resetTestDatabase();
+        Connection connection = null;
+        try{
+            connection = ConnectionUtil.getConnection();
+            PreparedStatement insertAccounts = connection.prepareStatement(
+                "INSERT INTO account (username, password) "
+                + "SELECT 'user' || X, 'password' FROM SYSTEM_RANGE(2, ?);");
+            insertAccounts.setInt(1, accounts);
+            insertAccounts.executeUpdate();
+            insertAccounts.close();
+
+            PreparedStatement insertMessages = connection.prepareStatement(
+                "INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                + "SELECT MOD(X, ?) + 1, 'benchmark message ' || X, ? + X FROM SYSTEM_RANGE(2, ?);");
+            insertMessages.setInt(1, accounts);
+            insertMessages.setLong(2, FIRST_EPOCH);
+            insertMessages.setInt(3, messages);
+            insertMessages.executeUpdate();
+            insertMessages.close();
+        } catch(SQLException e){
+            throw new IllegalStateException("Could not seed the benchmark database", e);
+        } finally {
+            if(connection != null){
+                try{
+                    connection.close();
+                } catch (SQLException e){
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package Perf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+import Util.JsonCodec;
+
+/**
+ * JSON encoding and decoding of message lists with the shared {@link JsonCodec}, next to a plain
+ * {@code ObjectMapper} going through a {@code String} the way the handlers used to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JsonBenchmark {
+    @Param({ "1", "100", "1000" })
+    public int size;
+
+    private final JsonCodec json = JsonCodec.getInstance();
+    private final ObjectMapper plainMapper = new ObjectMapper();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private List<Message> messages;
+    private String body;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        messages = new ArrayList<>(size);
+        for(int i = 1; i <= size; i++){
+            messages.add(new Message(i, i % 100 + 1, "benchmark message " + i, BenchmarkDatabase.FIRST_EPOCH + i));
+        }
+        body = plainMapper.writeValueAsString(messages);
+    }
+
+    @Benchmark
+    public int writeMessages() throws IOException {
+        out.reset();
+        json.writeMessages(out, messages);
+        return out.size();
+    }
+
+    @Benchmark
+    public List<Message> readMessages() throws IOException {
+        return json.readMessages(body);
+    }
+
+    @Benchmark
+    public List<Message> roundTrip() throws IOException {
+        out.reset();
+        json.writeMessages(out, messages);
+        return json.readMessages(out.toString("UTF-8"));
+    }
+
+    @Benchmark
+    public List<Message> roundTripPlainMapper() throws IOException {
+        String written = plainMapper.writeValueAsString(messages);
+        return plainMapper.readValue(written, plainMapper.getTypeFactory().constructCollectionType(List.class, Message.class));
+    }
+}
@@ -0,0 +1,324 @@
+package Perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import Controller.SocialMediaController;
+import Util.JsonCodec;
+import io.javalin.Javalin;
+
+/**
+ * An end-to-end load test. It starts the app through {@link SocialMediaController#startAPI()} on a free
+ * port against a seeded in-memory database, then runs a closed loop of concurrent clients that each pick
+ * the next call from a weighted mix of register, login, post, read, patch and delete. Latency is recorded
+ * per endpoint in HdrHistogram, and the report is written as JSON so runs can be compared.
+ *
+ * Configured with system properties:
+ * <ul>
+ * <li>{@code load.clients} concurrent clients, default 32</li>
+ * <li>{@code load.warmupSeconds} seconds run before recording, default 5</li>
+ * <li>{@code load.durationSeconds} seconds recorded, default 30</li>
+ * <li>{@code load.mix} weights, default {@code register=5,login=10,post=20,read=50,patch=10,delete=5}</li>
+ * <li>{@code load.accounts} and {@code load.messages} seeded rows, default 1000 and 10000</li>
+ * <li>{@code load.report} report file, default {@code target/load-report.json}</li>
+ * <li>{@code db.url} database, default a private in-memory H2 database</li>
+ * </ul>
+ *
+ * The server's own properties apply as well, and are written to the report. To compare requests on
+ * virtual threads with platform threads, run it on Java 21 or later once with
+ * {@code -Dserver.virtualThreads=true} and once without, at a client count above Jetty's 250 threads.
+ */
+public class LoadTest {
+    /**
+     * The calls a client can make.
+     */
+    enum Operation {
+        REGISTER, LOGIN, POST, READ, PATCH, DELETE
+    }
+
+    /**
+     * Latencies above this many microseconds are clamped when recorded.
+     */
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final int clients = Integer.getInteger("load.clients", 32);
+    private final int warmupSeconds = Integer.getInteger("load.warmupSeconds", 5);
+    private final int durationSeconds = Integer.getInteger("load.durationSeconds", 30);
+    private final int accounts = Integer.getInteger("load.accounts", 1000);
+    private final int messages = Integer.getInteger("load.messages", 10000);
+    private final String mixSpec = System.getProperty("load.mix",
+        "register=5,login=10,post=20,read=50,patch=10,delete=5");
+    private final File reportFile = new File(System.getProperty("load.report", "target/load-report.json"));
+
+    private final Operation[] mix;
+    private final Map<Operation, Recorder> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final AtomicInteger lastMessageID = new AtomicInteger();
+    private final AtomicInteger registered = new AtomicInteger();
+    private final HttpClient webClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+
+    private String baseUrl;
+    private volatile boolean recording = false;
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        if(System.getProperty("db.url") == null){
+            System.setProperty("db.url", "jdbc:h2:mem:load;DB_CLOSE_DELAY=-1");
+        }
+        new LoadTest().run();
+    }
+
+    private LoadTest(){
+        mix = parseMix(mixSpec);
+        for(Operation operation : Operation.values()){
+            latencies.put(operation, new Recorder(MAX_LATENCY_MICROS, 3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    private void run() throws Exception {
+        BenchmarkDatabase.seed(accounts, messages);
+        lastMessageID.set(messages);
+
+        Javalin app = new SocialMediaController().startAPI().start(0);
+        baseUrl = "http://localhost:" + app.port();
+        try{
+            List<Thread> threads = new ArrayList<>(clients);
+            for(int i = 0; i < clients; i++){
+                Thread thread = new Thread(this::client, "load-client-" + i);
+                threads.add(thread);
+                thread.start();
+            }
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+            for(Operation operation : Operation.values()){
+                latencies.get(operation).reset();
+                errors.get(operation).reset();
+            }
+            recording = true;
+            long start = System.nanoTime();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+            Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+            for(Operation operation : Operation.values()){
+                histograms.put(operation, latencies.get(operation).getIntervalHistogram());
+            }
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            running = false;
+            for(Thread thread : threads){
+                thread.join();
+            }
+
+            writeReport(histograms, elapsedSeconds);
+        } finally {
+            app.stop();
+        }
+    }
+
+    /**
+     * Used by each client thread to make calls back to back until the run ends. Every client deletes only
+     * messages it posted itself, so deletes do not make other clients' reads miss.
+     */
+    private void client(){
+        ArrayDeque<Integer> ownMessages = new ArrayDeque<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while(running){
+            Operation operation = mix[random.nextInt(mix.length)];
+            if(operation == Operation.DELETE && ownMessages.isEmpty()){
+                operation = Operation.POST;
+            }
+            HttpRequest request = buildRequest(operation, ownMessages, random);
+
+            long start = System.nanoTime();
+            boolean ok;
+            HttpResponse<String> response = null;
+            try{
+                response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+                ok = response.statusCode() == 200;
+            } catch (IOException e){
+                ok = false;
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long micros = (System.nanoTime() - start) / 1000;
+
+            if(recording){
+                latencies.get(operation).recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+                if(!ok){
+                    errors.get(operation).increment();
+                }
+            }
+            if(ok && operation == Operation.POST){
+                int message_id = readMessageID(response.body());
+                if(message_id > 0){
+                    ownMessages.push(message_id);
+                    lastMessageID.accumulateAndGet(message_id, Math::max);
+                }
+            }
+        }
+    }
+
+    private HttpRequest buildRequest(Operation operation, ArrayDeque<Integer> ownMessages, ThreadLocalRandom random){
+        switch(operation){
+            case REGISTER:
+                return post("/register", "{\"username\": \"load" + registered.incrementAndGet()
+                    + "-" + random.nextInt() + "\", \"password\": \"password\"}");
+            case LOGIN:
+                return post("/login", "{\"username\": \"" + randomUsername(random)
+                    + "\", \"password\": \"password\"}");
+            case POST:
+                return post("/messages", "{\"posted_by\": " + random.nextInt(1, accounts + 1)
+                    + ", \"message_text\": \"load test message\", \"time_posted_epoch\": "
+                    + BenchmarkDatabase.FIRST_EPOCH + "}");
+            case READ:
+                return HttpRequest.newBuilder(uri("/messages/" + random.nextInt(1, lastMessageID.get() + 1))).GET().build();
+            case PATCH:
+                return HttpRequest.newBuilder(uri("/messages/" + random.nextInt(1, lastMessageID.get() + 1)))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"patched by load test\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            case DELETE:
+                return HttpRequest.newBuilder(uri("/messages/" + ownMessages.pop())).DELETE().build();
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    /**
+     * The schema script creates {@code testuser1} and the seed names the rest {@code user2} onwards, all
+     * with the password {@code password}.
+     */
+    private String randomUsername(ThreadLocalRandom random){
+        int account_id = random.nextInt(1, accounts + 1);
+        return account_id == 1 ? "testuser1" : "user" + account_id;
+    }
+
+    private HttpRequest post(String path, String body){
+        return HttpRequest.newBuilder(uri(path))
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json")
+            .build();
+    }
+
+    private URI uri(String path){
+        return URI.create(baseUrl + path);
+    }
+
+    private int readMessageID(String body){
+        try{
+            JsonNode node = JsonCodec.getInstance().getMapper().readTree(body);
+            return node.path("message_id").asInt();
+        } catch (IOException e){
+            return 0;
+        }
+    }
+
+    private void writeReport(Map<Operation, Histogram> histograms, double elapsedSeconds) throws IOException {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("clients", clients);
+        config.put("warmupSeconds", warmupSeconds);
+        config.put("durationSeconds", durationSeconds);
+        config.put("mix", mixSpec);
+        config.put("accounts", accounts);
+        config.put("messages", messages);
+        config.put("dbUrl", System.getProperty("db.url"));
+        config.put("javaVersion", System.getProperty("java.version"));
+        config.put("virtualThreads", SocialMediaController.VIRTUAL_THREADS);
+        config.put("asyncDb", SocialMediaController.ASYNC_DB);
+
+        Histogram total = new Histogram(MAX_LATENCY_MICROS, 3);
+        long totalErrors = 0;
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        System.out.printf("%-10s %10s %10s %8s %10s %10s %10s %10s%n",
+            "endpoint", "count", "req/s", "errors", "p50 us", "p99 us", "p999 us", "max us");
+        for(Operation operation : Operation.values()){
+            Histogram histogram = histograms.get(operation);
+            long errorCount = errors.get(operation).sum();
+            total.add(histogram);
+            totalErrors += errorCount;
+            endpoints.put(operation.name().toLowerCase(), summarize(operation.name().toLowerCase(),
+                histogram, errorCount, elapsedSeconds));
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("config", config);
+        report.put("elapsedSeconds", elapsedSeconds);
+        report.put("total", summarize("total", total, totalErrors, elapsedSeconds));
+        report.put("endpoints", endpoints);
+
+        File parent = reportFile.getAbsoluteFile().getParentFile();
+        if(parent != null){
+            parent.mkdirs();
+        }
+        JsonCodec.getInstance().getMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+        System.out.println("Load test report is saved to " + reportFile.getPath());
+    }
+
+    private Map<String, Object> summarize(String name, Histogram histogram, long errorCount, double elapsedSeconds){
+        long count = histogram.getTotalCount();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", count);
+        summary.put("errors", errorCount);
+        summary.put("throughputPerSecond", count / elapsedSeconds);
+        summary.put("meanMicros", count == 0 ? 0 : histogram.getMean());
+        summary.put("p50Micros", histogram.getValueAtPercentile(50));
+        summary.put("p90Micros", histogram.getValueAtPercentile(90));
+        summary.put("p99Micros", histogram.getValueAtPercentile(99));
+        summary.put("p999Micros", histogram.getValueAtPercentile(99.9));
+        summary.put("maxMicros", histogram.getMaxValue());
+        System.out.printf("%-10s %10d %10.0f %8d %10d %10d %10d %10d%n", name, count, count / elapsedSeconds,
+            errorCount, histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+            histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+        return summary;
+    }
+
+    /**
+     * Used to turn a mix such as {@code read=50,post=20} into a table to pick from, where each operation
+     * appears as many times as its weight.
+     * @param spec Take in the {@code String} of comma separated {@code name=weight} pairs.
+     * @return {@code Operation} array to pick a random entry from.
+     */
+    private static Operation[] parseMix(String spec){
+        List<Operation> table = new ArrayList<>();
+        for(String part : spec.split(",")){
+            String[] pair = part.trim().split("=");
+            if(pair.length != 2){
+                throw new IllegalArgumentException("Invalid load.mix entry '" + part + "'");
+            }
+            Operation operation = Operation.valueOf(pair[0].trim().toUpperCase());
+            int weight = Integer.parseInt(pair[1].trim());
+            for(int i = 0; i < weight; i++){
+                table.add(operation);
+            }
+        }
+        if(table.isEmpty()){
+            throw new IllegalArgumentException("load.mix has no operation with a weight above 0");
+        }
+        return table.toArray(new Operation[0]);
+    }
+}
@@ -0,0 +1,57 @@
+package Perf;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessageInsertResult;
+
+/**
+ * Single message inserts: the plain insert, and the insert that checks the poster in the same statement.
+ * The table grows for the whole run, which is what a live table does too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = { BenchmarkDatabase.DB_URL, "-Xmx2g" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MessageWriteBenchmark {
+    private static final int ACCOUNTS = 100;
+
+    private MessageDAO messageDAO;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        BenchmarkDatabase.seed(ACCOUNTS, 1000);
+        messageDAO = new MessageDAO();
+    }
+
+    @Benchmark
+    public Message insertMessage(){
+        return messageDAO.insertMessage(newMessage());
+    }
+
+    @Benchmark
+    public MessageInsertResult insertMessageIfAccountExists(){
+        return messageDAO.insertMessageIfAccountExists(newMessage());
+    }
+
+    private Message newMessage(){
+        return new Message(ThreadLocalRandom.current().nextInt(1, ACCOUNTS + 1),
+            "benchmark message", BenchmarkDatabase.FIRST_EPOCH);
+    }
+}
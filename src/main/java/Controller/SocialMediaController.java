@@ -1,16 +1,43 @@
 package Controller;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
+import DAO.MessageConsumer;
 import Model.Account;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageInsertResult;
+import Model.MessagePage;
 import Service.AccountService;
 import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.DbExecutor;
+import Util.JsonCodec;
+import Util.Metrics;
+import Util.RouteMetrics;
+import Util.SqlProfiler;
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -18,19 +45,75 @@ import io.javalin.http.Context;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+    /**
+     * Response header that carries the cursor of the next page when a listing is read in pages.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * Content type of the Prometheus text format served at {@code /metrics}.
+     */
+    public static final String METRICS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * Set {@code server.virtualThreads} to run each request on its own virtual thread instead of on
+     * Jetty's pool of platform threads. It needs a JVM with virtual threads (Java 21 or later); on an
+     * older JVM the platform threads are kept.
+     */
+    public static final boolean VIRTUAL_THREADS = Boolean.getBoolean("server.virtualThreads");
+
+    /**
+     * Handlers that touch the database run on the bounded {@link DbExecutor} and complete through
+     * {@code ctx.future(...)}, unless {@code server.asyncDb} is {@code false}, in which case they run on
+     * the Jetty thread that received the request. When requests run on virtual threads the executor is
+     * not used either: a virtual thread blocked on JDBC is cheap to park, so handing the work to a
+     * platform thread would only add a hop, and the pool's acquire timeout bounds the wait instead.
+     */
+    public static final boolean ASYNC_DB = Boolean.parseBoolean(System.getProperty("server.asyncDb", "true"));
+
+    /**
+     * Seconds a client is asked to wait before retrying a request refused with a 503.
+     */
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private static final TypeReference<List<MessageBatchResult>> BATCH_RESULTS =
+        new TypeReference<List<MessageBatchResult>>(){};
+    private static final TypeReference<List<Integer>> ID_LIST = new TypeReference<List<Integer>>(){};
+
     private AccountService accountService = null;
     private MessageService messageService = null;
-    private ObjectMapper mapper = null;
+    private final JsonCodec json = JsonCodec.getInstance();
+    private DbExecutor dbExecutor = null;
 
     public SocialMediaController(){
         accountService = AccountService.getInstance();
         messageService = MessageService.getInstance();
-        mapper = new ObjectMapper();
+        dbExecutor = defaultDbExecutor();
     }
 
     public SocialMediaController(AccountService accountService, MessageService messageService){
+        this(accountService, messageService, defaultDbExecutor());
+    }
+
+    /**
+     * @param accountService Takes in the {@code AccountService} to serve accounts with.
+     * @param messageService Takes in the {@code MessageService} to serve messages with.
+     * @param dbExecutor Takes in the {@code DbExecutor} to run handlers on, or {@code null} to run them on
+     * the thread that received the request.
+     */
+    public SocialMediaController(AccountService accountService, MessageService messageService, DbExecutor dbExecutor){
         this.accountService = accountService;
         this.messageService = messageService;
+        this.dbExecutor = dbExecutor;
+    }
+
+    /**
+     * @return {@code DbExecutor} shared by the application if {@link #ASYNC_DB} is set and requests do not
+     * run on virtual threads, otherwise {@code null}.
+     */
+    private static DbExecutor defaultDbExecutor(){
+        boolean virtualThreads = VIRTUAL_THREADS && VirtualThreads.areSupported();
+        return ASYNC_DB && !virtualThreads ? DbExecutor.getInstance() : null;
     }
 
     /**
@@ -39,31 +122,158 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
-        app.post("/register", this::registerHandler);
-        app.post("/login", this::loginHandler);
-        app.post("/messages", this::messagesHandler);
-        app.get("/messages", this::getAllMessageHandler);
-        app.get("/messages/{message_id}", this::getMessageByIDHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageByIDHandler);
-        app.patch("/messages/{message_id}", this::patchMesageByIDHandler);
-        app.get("/accounts/{account_id}/messages", this::getAllMessageFromUserAccountIDHandler);
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(json);
+            config.jetty.server(SocialMediaController::createServer);
+        });
+        route(app, HandlerType.POST, "/register", this::registerHandler);
+        route(app, HandlerType.POST, "/login", this::loginHandler);
+        route(app, HandlerType.POST, "/messages", this::messagesHandler);
+        route(app, HandlerType.POST, "/messages/batch", this::messagesBatchHandler);
+        route(app, HandlerType.POST, "/messages/lookup", this::messagesLookupHandler);
+        route(app, HandlerType.GET, "/messages", this::getAllMessageHandler);
+        route(app, HandlerType.GET, "/messages/{message_id}", this::getMessageByIDHandler);
+        route(app, HandlerType.DELETE, "/messages/{message_id}", this::deleteMessageByIDHandler);
+        route(app, HandlerType.PATCH, "/messages/{message_id}", this::patchMesageByIDHandler);
+        route(app, HandlerType.GET, "/accounts/{account_id}/messages", this::getAllMessageFromUserAccountIDHandler);
+        app.get("/metrics", this::metricsHandler);
+        app.get("/admin/sql", this::sqlProfileHandler);
+        app.delete("/admin/sql", this::sqlProfileResetHandler);
         return app;
     }
 
+    /**
+     * Used to build the Jetty server. By default requests run on a pool of up to 250 platform threads.
+     * With {@code server.virtualThreads} Jetty keeps that pool for accepting and selecting, and hands
+     * every request to a new virtual thread, so a request blocked on JDBC only parks its virtual thread
+     * and leaves the carrier free for other requests. The server is always built here because Javalin
+     * would otherwise move all of Jetty, selectors included, onto virtual threads whenever the JVM has
+     * them.
+     * @return {@code Server} for Javalin to add its connector and handlers to.
+     */
+    private static Server createServer(){
+        QueuedThreadPool threadPool = new QueuedThreadPool(250, 8, 60_000);
+        threadPool.setName("JettyServerThreadPool");
+        if(VIRTUAL_THREADS){
+            if(VirtualThreads.areSupported()){
+                threadPool.setUseVirtualThreads(true);
+            } else {
+                System.err.println("server.virtualThreads is set, but this JVM has no virtual threads; "
+                    + "requests run on platform threads");
+            }
+        }
+        return new Server(threadPool);
+    }
+
+    /**
+     * Used to register a route with its request count, status codes, requests in flight and latency
+     * recorded in {@link Metrics}. The counters are looked up once here, so the wrapper only touches
+     * striped counters on each request.
+     *
+     * With a {@link DbExecutor} the handler is queued on it from the supplier given to
+     * {@code ctx.future(...)}, which Javalin calls once the request has gone async, so the Jetty thread
+     * is given back as soon as the work is queued and a handler that finishes at once cannot race the
+     * async start. The request is measured until the handler finishes there. If the executor's queue is
+     * full the request is refused with a 503 and a {@code Retry-After} header without waiting.
+     * @param app Takes in the Javalin app to add the route to.
+     * @param type Takes in the {@code HandlerType} HTTP method.
+     * @param path Takes in the {@code String} path pattern.
+     * @param handler Takes in the {@code Handler} for the route.
+     */
+    private void route(Javalin app, HandlerType type, String path, Handler handler){
+        RouteMetrics metrics = Metrics.route(type.name(), path);
+        if(dbExecutor == null){
+            app.addHandler(type, path, ctx -> {
+                long start = metrics.begin();
+                boolean handled = false;
+                try{
+                    handler.handle(ctx);
+                    handled = true;
+                } finally {
+                    metrics.end(start, handled ? ctx.statusCode() : 500);
+                }
+            });
+            return;
+        }
+        app.addHandler(type, path, ctx -> {
+            long start = metrics.begin();
+            ctx.future(() -> {
+                CompletableFuture<Void> future;
+                try{
+                    future = dbExecutor.submit(() -> {
+                        handler.handle(ctx);
+                        return null;
+                    });
+                } catch (RejectedExecutionException e){
+                    ctx.status(503);
+                    ctx.header(Header.RETRY_AFTER, RETRY_AFTER_SECONDS);
+                    metrics.end(start, 503);
+                    return CompletableFuture.completedFuture(null);
+                }
+                return future.whenComplete((result, error) ->
+                    metrics.end(start, error == null ? ctx.statusCode() : 500));
+            });
+        });
+    }
+
+    /**
+     * Method that defines the structure of the metrics handler.
+     * This writes every metric in the Prometheus text format.
+     * @param ctx Takes in a Javalin context object to be processed.
+     */
+    private void metricsHandler(Context ctx){
+        ctx.contentType(METRICS_CONTENT_TYPE);
+        ctx.result(Metrics.scrape());
+    }
+
+    /**
+     * Method that defines the structure of the SQL profile handler.
+     * This returns the statistics of every statement the profiler has seen, slowest in total first,
+     * and the most recent slow queries. Answers 404 when profiling is off.
+     * @param ctx Takes in a Javalin context object to be processed.
+     * @throws IOException Throws an {@code IOException} if the response can not be written.
+     */
+    private void sqlProfileHandler(Context ctx) throws IOException{
+        SqlProfiler profiler = ConnectionUtil.getPool().getProfiler();
+        if(profiler == null){
+            ctx.status(404);
+            return;
+        }
+        Map<String, Object> profile = new LinkedHashMap<>();
+        profile.put("slow_threshold_ms", profiler.getSlowThresholdMillis());
+        profile.put("queries", profiler.getQueryStats());
+        profile.put("slow_queries", profiler.getSlowQueries());
+        json.write(jsonResponse(ctx), profile, Map.class);
+    }
+
+    /**
+     * Method that defines the structure of the SQL profile reset handler.
+     * This drops every statistic and slow query, so the next profile only covers what runs after it.
+     * @param ctx Takes in a Javalin context object to be processed.
+     */
+    private void sqlProfileResetHandler(Context ctx){
+        SqlProfiler profiler = ConnectionUtil.getPool().getProfiler();
+        if(profiler == null){
+            ctx.status(404);
+            return;
+        }
+        profiler.reset();
+        ctx.status(204);
+    }
+
     /**
      * Method that defines the structure of a register handler. 
      * This handles the API call for registering a new account.
      * @param ctx Takes in a Javalin context object to be processed.
-     * @throws JsonProcessingException Throws an {@code JsonProcessingException} if there is an issue
-     * with the {@code ObjectMapper}.
+     * @throws IOException Throws an {@code IOException} if the body can not be read or the response
+     * can not be written.
      */
-    private void registerHandler(Context ctx) throws JsonProcessingException{
-        Account account = mapper.readValue(ctx.body(), Account.class);
+    private void registerHandler(Context ctx) throws IOException{
+        Account account = json.readAccount(ctx.body());
 
         Account newAccount = accountService.createAccount(account);
         if(newAccount != null){
-            ctx.json(mapper.writeValueAsString(newAccount));
+            json.writeAccount(jsonResponse(ctx), newAccount);
         } else {
             ctx.status(400);
         }
@@ -73,16 +283,16 @@ public class SocialMediaController {
      * Method that defines the structure of the login handler.
      * This method handles the login API calls.
      * @param ctx Takes in a Javalin context object to be processed.
-     * @throws JsonProcessingException Throws an {@code JsonProcessingException} if there is an issue
-     * with the {@code ObjectMapper}.
+     * @throws IOException Throws an {@code IOException} if the body can not be read or the response
+     * can not be written.
      */
-       private void loginHandler(Context ctx) throws JsonProcessingException {
-        Account account = mapper.readValue(ctx.body(), Account.class);
+       private void loginHandler(Context ctx) throws IOException {
+        Account account = json.readAccount(ctx.body());
 
         Account newAccount = accountService.getAccount(account);
 
         if(newAccount != null){
-            ctx.json(mapper.writeValueAsString(newAccount));
+            json.writeAccount(jsonResponse(ctx), newAccount);
         } else {
             ctx.status(401);
         }
@@ -90,46 +300,133 @@ public class SocialMediaController {
 
     /**
      * Method that defines the structure of the post message handler.
-     * This method is used to create message.
+     * This method is used to create message. A rejected message gets a 400, and a message the database
+     * could not store gets a 500.
      * @param ctx Take in a Javalin context.
-     * @throws JsonProcessingException Throws an {@code JsonProcessingException} if there is an issue
-     * with the {@code ObjectMapper}.
+     * @throws IOException Throws an {@code IOException} if the body can not be read or the response
+     * can not be written.
      */
-    private void messagesHandler(Context ctx) throws JsonProcessingException{
-        Message message = mapper.readValue(ctx.body(), Message.class);
+    private void messagesHandler(Context ctx) throws IOException{
+        Message message = json.readMessage(ctx.body());
 
-        Message nMessage = messageService.createMessage(message);
-        if(nMessage != null){
-            ctx.json(mapper.writeValueAsString(nMessage));
+        MessageInsertResult result = messageService.createMessage(message);
+        switch(result.getStatus()){
+            case INSERTED:
+                json.writeMessage(jsonResponse(ctx), result.getMessage());
+                break;
+            case FAILED:
+                ctx.status(500);
+                break;
+            default:
+                ctx.status(400);
+                break;
+        }
+    }
+
+    /**
+     * Method that defines the structure of the post message batch handler.
+     * This method is used to create many messages with one request. Each entry gets its own result,
+     * with either the stored message or the reason it was rejected.
+     * @param ctx Take in a Javalin context.
+     * @throws IOException Throws an {@code IOException} if the body can not be read or the response
+     * can not be written.
+     */
+    private void messagesBatchHandler(Context ctx) throws IOException{
+        List<Message> messages;
+        try{
+            messages = json.readMessages(ctx.body());
+        } catch (JsonProcessingException e){
+            ctx.status(400);
+            return;
+        }
+
+        List<MessageBatchResult> results = messages == null ? null : messageService.createMessages(messages);
+        if(results != null){
+            json.write(jsonResponse(ctx), results, BATCH_RESULTS.getType());
         } else {
             ctx.status(400);
         }
     }
 
+    /**
+     * Method that defines the structure of the post message lookup handler.
+     * This is the body variant of {@code GET /messages?ids=}, for lists of IDs too long for a URL. The body
+     * is a JSON array of message IDs.
+     * @param ctx Take in a Javalin context.
+     * @throws IOException Throws an {@code IOException} if the response can not be written.
+     */
+    private void messagesLookupHandler(Context ctx) throws IOException{
+        List<Integer> ids;
+        try{
+            ids = json.readerFor(ID_LIST.getType()).readValue(ctx.body());
+        } catch (JsonProcessingException e){
+            ids = null;
+        }
+        if(ids == null || ids.contains(null)){
+            ctx.status(400);
+            return;
+        }
+        writeMessagesByIDs(ctx, ids);
+    }
+
     /**
      * Method that defines the structure of the get for message handler.
      * This is used to create every single message within the database.
+     * With {@code ids=1,2,3} only those messages are returned, in the same order, with {@code null} for
+     * the ones that do not exist.
+     * When {@code after_id} or {@code limit} is given, only one page is returned and the cursor of the
+     * next page is sent in the {@code X-Next-Cursor} header. With {@code stream=true} every message is
+     * streamed straight to the response instead.
      * @param ctx Take in a Javalin context.
-     * @throws JsonProcessingException Throws an {@code JsonProcessingException} if there is an issue
-     * with the {@code ObjectMapper}.
+     * @throws IOException Throws an {@code IOException} if there is an issue
+     * with the JSON or the response.
      */
-     private void getAllMessageHandler(Context ctx) throws JsonProcessingException {
-        List<Message> messages = messageService.getAllMessage();
-        ctx.json(mapper.writeValueAsString(messages));
+     private void getAllMessageHandler(Context ctx) throws IOException {
+        if(isStreamRequested(ctx)){
+            streamMessages(ctx, messageService::streamAllMessage);
+            return;
+        }
+
+        String ids = ctx.queryParam("ids");
+        if(ids != null){
+            writeMessagesByIDs(ctx, parseIDs(ids));
+            return;
+        }
+
+        String after_id = ctx.queryParam("after_id");
+        String limit = ctx.queryParam("limit");
+        if(after_id == null && limit == null){
+            List<Message> messages = messageService.getAllMessage();
+            json.writeMessages(jsonResponse(ctx), messages);
+            return;
+        }
+
+        MessagePage page;
+        try{
+            page = messageService.getMessagePage(
+                after_id == null ? 0 : Integer.parseInt(after_id),
+                limit == null ? MessageService.DEFAULT_PAGE_SIZE : Integer.parseInt(limit)
+            );
+        } catch (IllegalArgumentException e){
+            ctx.status(400);
+            return;
+        }
+        writePage(ctx, page);
     }
 
     /**
      * Method that defines the structure of the get with param for message handler.
      * This message is used to get a specific message with the use of a messsage ID.
+     * The message is written from its cached JSON encoding when there is one.
      * @param ctx Take in a Javalin context.
-     * @throws JsonProcessingException Throws an {@code JsonProcessingException} if there is an issue
-     * with the {@code ObjectMapper}.
+     * @throws IOException Throws an {@code IOException} if the body can not be read or the response
+     * can not be written.
      */
-    private void getMessageByIDHandler(Context ctx) throws JsonProcessingException{
+    private void getMessageByIDHandler(Context ctx) throws IOException{
         int message_id = getIDFromContext(ctx, "message_id");
-        Message message = messageService.getMessageByID(message_id);
+        byte[] message = messageService.getMessageJson(message_id);
         if(message != null){
-            ctx.json(mapper.writeValueAsString(message));
+            jsonResponse(ctx).write(message);
         }
     }
 
@@ -137,14 +434,14 @@ public class SocialMediaController {
      * Method that defines the structure of the delete with param for message handler.
      * This is used to delete a specific message by using the inputted ID.
      * @param ctx Take in a Javalin context.
-     * @throws JsonProcessingException Throws an {@code JsonProcessingException} if there is an issue
-     * with the {@code ObjectMapper}.
+     * @throws IOException Throws an {@code IOException} if the body can not be read or the response
+     * can not be written.
      */
-    private void deleteMessageByIDHandler(Context ctx) throws JsonProcessingException{
+    private void deleteMessageByIDHandler(Context ctx) throws IOException{
         int message_id = getIDFromContext(ctx, "message_id");
         Message message = messageService.deleteMessageByID(message_id);
         if(message != null){
-            ctx.json(mapper.writeValueAsString(message));
+            json.writeMessage(jsonResponse(ctx), message);
         }
     }
 
@@ -152,15 +449,16 @@ public class SocialMediaController {
      * Method that defines the structure of the patch with param for message handler.
      * This is used to update a specific message by using the input ID and new message.
      * @param ctx Take in a Javalin context.
-     * @throws JsonProcessingException Throws an {@code JsonProcessingException} if there is an issue
+     * @throws IOException Throws an {@code IOException} if the body can not be read or the response
+     * can not be written.
      */
-    private void patchMesageByIDHandler(Context ctx) throws JsonProcessingException{
+    private void patchMesageByIDHandler(Context ctx) throws IOException{
         int message_id = getIDFromContext(ctx, "message_id");
-        Message getMessage = mapper.readValue(ctx.body(), Message.class);
+        Message getMessage = json.readMessage(ctx.body());
         
         Message message = messageService.updateMessage(message_id, getMessage.getMessage_text());
         if(message != null){
-            ctx.json(mapper.writeValueAsString(message));
+            json.writeMessage(jsonResponse(ctx), message);
         } else {
             ctx.status(400);
         }
@@ -169,13 +467,147 @@ public class SocialMediaController {
     /**
      * Method that defines the structure of the get with param for account handler.
      * This is used to get all message by using account's information.
+     * With {@code stream=true} the messages are streamed straight to the response. When {@code before} or
+     * {@code limit} is given, the newest messages are returned one page at a time, newest first, and the
+     * cursor of the next page is sent in the {@code X-Next-Cursor} header. Otherwise the whole list is
+     * written from its cached JSON encoding when there is one.
      * @param ctx Take in a Javalin context.
-     * @throws JsonProcessingException Throws an {@code JsonProcessingException} if there is an issue
+     * @throws IOException Throws an {@code IOException} if there is an issue
+     * with the JSON or the response.
      */
-    private void getAllMessageFromUserAccountIDHandler(Context ctx) throws JsonProcessingException{
+    private void getAllMessageFromUserAccountIDHandler(Context ctx) throws IOException{
         int id = getIDFromContext(ctx, "account_id");
-        List<Message> messages = messageService.getAllAccountMessage(id);
-        ctx.json(mapper.writeValueAsString(messages));
+        if(isStreamRequested(ctx)){
+            streamMessages(ctx, consumer -> messageService.streamAllAccountMessage(id, consumer));
+            return;
+        }
+
+        String before = ctx.queryParam("before");
+        String limit = ctx.queryParam("limit");
+        if(before != null || limit != null){
+            MessagePage page;
+            try{
+                page = messageService.getTimeline(id, before,
+                    limit == null ? MessageService.DEFAULT_PAGE_SIZE : Integer.parseInt(limit));
+            } catch (IllegalArgumentException e){
+                ctx.status(400);
+                return;
+            }
+            writePage(ctx, page);
+            return;
+        }
+        byte[] messages = messageService.getAllAccountMessageJson(id);
+        if(messages != null){
+            jsonResponse(ctx).write(messages);
+        } else {
+            ctx.status(500);
+        }
+    }
+
+    /**
+     * Used to write the messages with the given IDs, in the same order, with {@code null} for the ones that
+     * do not exist. More than {@link MessageService#MAX_LOOKUP_SIZE} IDs gets a 400, and a read that failed
+     * gets a 500.
+     * @param ctx Takes in a Javalin Context object to write the response to.
+     * @param ids Takes in the {@code List} of message IDs, or {@code null} to answer with a 400.
+     * @throws IOException Throws an {@code IOException} if the response can not be written.
+     */
+    private void writeMessagesByIDs(Context ctx, List<Integer> ids) throws IOException{
+        if(ids == null || ids.size() > MessageService.MAX_LOOKUP_SIZE){
+            ctx.status(400);
+            return;
+        }
+        List<Message> messages = messageService.getMessagesByIDs(ids);
+        if(messages != null){
+            json.writeMessages(jsonResponse(ctx), messages);
+        } else {
+            ctx.status(500);
+        }
+    }
+
+    /**
+     * Used to read a comma separated list of message IDs. Reading stops as soon as the list is over
+     * {@link MessageService#MAX_LOOKUP_SIZE}, so a huge query string is not parsed in full.
+     * @param ids Takes in the {@code String} of IDs, such as {@code 1,2,3}.
+     * @return {@code List} of the IDs, or {@code null} if one of them is not a number.
+     */
+    private List<Integer> parseIDs(String ids){
+        List<Integer> result = new ArrayList<>();
+        if(ids.isBlank()){
+            return result;
+        }
+        int start = 0;
+        while(start <= ids.length() && result.size() <= MessageService.MAX_LOOKUP_SIZE){
+            int end = ids.indexOf(',', start);
+            if(end < 0){
+                end = ids.length();
+            }
+            try{
+                result.add(Integer.parseInt(ids.substring(start, end).trim()));
+            } catch (NumberFormatException e){
+                return null;
+            }
+            start = end + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Used to write a page of messages, with its cursor in the {@code X-Next-Cursor} header.
+     * @param ctx Takes in a Javalin Context object to write the response to.
+     * @param page Takes in the {@code MessagePage} to write, or {@code null} to answer with a 500 because
+     * the page could not be read.
+     * @throws IOException Throws an {@code IOException} if the body can not be read or the response
+     * can not be written.
+     */
+    private void writePage(Context ctx, MessagePage page) throws IOException{
+        if(page == null){
+            ctx.status(500);
+            return;
+        }
+        if(page.getNext_cursor() != null){
+            ctx.header(NEXT_CURSOR_HEADER, page.getNext_cursor());
+        }
+        json.writeMessages(jsonResponse(ctx), page.getMessages());
+    }
+
+    /**
+     * Used to start a JSON response that is written straight to the response stream, so no {@code String}
+     * of the body is built.
+     * @param ctx Takes in a Javalin Context object to write the response to.
+     * @return {@code OutputStream} of the response body.
+     */
+    private OutputStream jsonResponse(Context ctx){
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        return ctx.outputStream();
+    }
+
+    /**
+     * @param ctx Takes in a Javalin Context object to read the query from.
+     * @return {@code true} if the request asked for {@code stream=true}.
+     */
+    private boolean isStreamRequested(Context ctx){
+        return "true".equalsIgnoreCase(ctx.queryParam("stream"));
+    }
+
+    /**
+     * Used to write messages to the response as a JSON array while they are read from the database, so
+     * no {@code List} or {@code String} of the whole response is ever built. If the read fails part way
+     * the array is left unterminated, so the client sees broken JSON rather than a short list.
+     * @param ctx Takes in a Javalin Context object to write the response to.
+     * @param stream Takes in a {@code Predicate} that streams every message to the consumer it is given
+     * and returns whether it finished.
+     * @throws IOException Throws an {@code IOException} if the response can not be written.
+     */
+    private void streamMessages(Context ctx, Predicate<MessageConsumer> stream) throws IOException{
+        ObjectWriter writer = json.writerFor(Message.class);
+        JsonGenerator generator = json.getMapper().getFactory().createGenerator(jsonResponse(ctx));
+
+        generator.writeStartArray();
+        if(stream.test(message -> writer.writeValue(generator, message))){
+            generator.writeEndArray();
+        }
+        generator.flush();
     }
 
     /**
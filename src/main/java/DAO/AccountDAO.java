@@ -6,18 +6,38 @@ import Model.Message;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntConsumer;
 
 import Util.ConnectionUtil;
+import Util.LatencyTimer;
+import Util.Metrics;
 
 public class AccountDAO {
     /**
+     * SQLSTATE H2 reports when an insert breaks a unique constraint.
+     */
+    private static final String DUPLICATE_KEY_STATE = "23505";
+
+    /**
+     * Time spent in each method, exported through {@link Metrics}.
+     */
+    private static final LatencyTimer INSERT_ACCOUNT_TIMER = Metrics.daoTimer("AccountDAO", "insertAccount");
+    private static final LatencyTimer GET_ACCOUNT_BY_USERNAME_TIMER = Metrics.daoTimer("AccountDAO", "getAccountByUsername");
+    private static final LatencyTimer CHECK_IF_ACCOUNT_EXIST_TIMER = Metrics.daoTimer("AccountDAO", "checkIfAccountExist");
+    private static final LatencyTimer LOAD_ACCOUNT_IDS_TIMER = Metrics.daoTimer("AccountDAO", "loadAccountIDs");
+
+    /**
+     * The username is not checked first; the unique constraint on {@code account.username} rejects a
+     * taken username, so two registrations racing for the same name can not both succeed.
      * @param account Take in {@code Account} information to create a new account in the database.
      * @return Returns the {@code Account} as a object when successful or return {@code null}
-     * if there is an issue.
+     * if the username is taken or there is an issue.
      */
     public Account insertAccount(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
+        long start = INSERT_ACCOUNT_TIMER.start();
+        Connection connection = null;
         try{
+            connection = ConnectionUtil.getConnection();
             String sql = "INSERT INTO account (username, password) VALUES (?, ?);";
 
             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
@@ -35,8 +55,11 @@ public class AccountDAO {
             }
 
         } catch (SQLException e) {
-            e.printStackTrace();
+            if(!isDuplicateKey(e)){
+                e.printStackTrace();
+            }
         } finally {
+            INSERT_ACCOUNT_TIMER.record(start);
             if(connection != null){
                 try{
                     connection.close();
@@ -54,9 +77,11 @@ public class AccountDAO {
      * an issue.
      */
     public Account getAccountByUsername(String username){
-        Connection connection = ConnectionUtil.getConnection();
+        long start = GET_ACCOUNT_BY_USERNAME_TIMER.start();
+        Connection connection = null;
 
         try{
+            connection = ConnectionUtil.getConnection();
             String sql = "SELECT * FROM account WHERE username = ?;";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
@@ -74,6 +99,7 @@ public class AccountDAO {
         } catch(SQLException e){
             e.printStackTrace();
         } finally {
+            GET_ACCOUNT_BY_USERNAME_TIMER.record(start);
             if(connection != null){
                 try{
                     connection.close();
@@ -90,8 +116,10 @@ public class AccountDAO {
      * @return {@code True} if the account exist or {@code false} if the account doesn't exist.
      */
     public boolean checkIfAccountExist(int id){
-        Connection connection = ConnectionUtil.getConnection();
+        long start = CHECK_IF_ACCOUNT_EXIST_TIMER.start();
+        Connection connection = null;
         try{
+            connection = ConnectionUtil.getConnection();
             String sql = "SELECT * FROM account WHERE account_id = ?";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
@@ -104,6 +132,7 @@ public class AccountDAO {
         } catch(SQLException e){
             e.printStackTrace();
         } finally {
+            CHECK_IF_ACCOUNT_EXIST_TIMER.record(start);
             if(connection != null){
                 try{
                     connection.close();
@@ -114,4 +143,46 @@ public class AccountDAO {
         }
         return false;
     }
+
+    /**
+     * Used to read every account ID without building a list of accounts.
+     * @param consumer Take in an {@code IntConsumer} that is given each account ID.
+     * @return {@code True} if every ID was read or {@code false} if there was an issue.
+     */
+    public boolean loadAccountIDs(IntConsumer consumer){
+        long start = LOAD_ACCOUNT_IDS_TIMER.start();
+        Connection connection = null;
+        try{
+            connection = ConnectionUtil.getConnection();
+            String sql = "SELECT account_id FROM account;";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            ResultSet resultSet = preparedStatement.executeQuery();
+            while(resultSet.next()){
+                consumer.accept(resultSet.getInt(1));
+            }
+            return true;
+        } catch(SQLException e){
+            e.printStackTrace();
+        } finally {
+            LOAD_ACCOUNT_IDS_TIMER.record(start);
+            if(connection != null){
+                try{
+                    connection.close();
+                } catch (SQLException e){
+                    e.printStackTrace();
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param e Take in the {@code SQLException} thrown by an insert.
+     * @return {@code True} if the insert failed because a unique value was already taken.
+     */
+    private static boolean isDuplicateKey(SQLException e){
+        return e instanceof SQLIntegrityConstraintViolationException
+            && DUPLICATE_KEY_STATE.equals(e.getSQLState());
+    }
 }
@@ -0,0 +1,79 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import Model.Message;
+import Util.Histogram;
+import Util.MicroBatcher;
+
+/**
+ * Queues message lookups by ID from many threads and reads them together, so lookups of different
+ * messages that arrive within a few milliseconds share one statement. A {@link MicroBatcher} collects the
+ * lookups that arrive within {@code windowMicros} of the first, up to {@code maxBatchSize}, and they are
+ * read with {@link MessageDAO#getMessagesByIDs(java.util.Collection)}. Each caller is then given its own
+ * row. Every lookup is read by a statement that starts after it was queued, so a batched read never
+ * returns an older row than a read on its own would.
+ */
+public class MessageBatchLoader {
+    private volatile MessageDAO messageDAO;
+    private final MicroBatcher<Integer, Message> batcher;
+
+    /**
+     * @param messageDAO Takes in the {@code MessageDAO} to read batches with.
+     * @param maxBatchSize Takes in the {@code int} most lookups to read together.
+     * @param windowMicros Takes in the {@code long} microseconds to wait for more lookups after the first.
+     */
+    public MessageBatchLoader(MessageDAO messageDAO, int maxBatchSize, long windowMicros){
+        this.messageDAO = messageDAO;
+        this.batcher = new MicroBatcher<>("message-batch-loader", maxBatchSize, windowMicros, this::read);
+    }
+
+    /**
+     * Used to read a message as part of the next batch. Blocks until the batch is read.
+     * @param message_id Takes in the {@code int} ID of the message.
+     * @return {@code Message} with the ID, or {@code null} if it does not exist or could not be read.
+     */
+    public Message load(int message_id){
+        return batcher.submit(message_id);
+    }
+
+    /**
+     * @param messageDAO Takes in the {@code MessageDAO} to read the next batches with.
+     */
+    public void setMessageDAO(MessageDAO messageDAO){
+        this.messageDAO = messageDAO;
+    }
+
+    /**
+     * @return {@code Histogram} of how many lookups were read together.
+     */
+    public Histogram getBatchSizes(){
+        return batcher.getBatchSizes();
+    }
+
+    /**
+     * Used to read one batch. A batch of a single ID is read with the plain query, which is cheaper than
+     * the array one when there is nothing to share it with.
+     */
+    private List<Message> read(List<Integer> message_ids){
+        MessageDAO messageDAO = this.messageDAO;
+        Set<Integer> ids = new LinkedHashSet<>(message_ids);
+        List<Message> results = new ArrayList<>(message_ids.size());
+        if(ids.size() == 1){
+            Message message = messageDAO.getMessageByID(message_ids.get(0));
+            for(int i = 0; i < message_ids.size(); i++){
+                results.add(message);
+            }
+            return results;
+        }
+        Map<Integer, Message> messages = messageDAO.getMessagesByIDs(ids);
+        for(Integer message_id : message_ids){
+            results.add(messages != null ? messages.get(message_id) : null);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,19 @@
+package DAO;
+
+import java.io.IOException;
+
+import Model.Message;
+
+/**
+ * Receives messages one at a time while the DAO is still reading them, so a caller can write each
+ * row out without the DAO building a {@code List} of the whole result.
+ */
+@FunctionalInterface
+public interface MessageConsumer {
+    /**
+     * @param message Takes in the {@code Message} that was just read.
+     * @throws IOException Throws an {@code IOException} if the message can not be written out, which
+     * stops the read.
+     */
+    void accept(Message message) throws IOException;
+}
@@ -1,20 +1,68 @@
 package DAO;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import Model.Message;
+import Model.MessageInsertResult;
 import Util.ConnectionUtil;
+import Util.LatencyTimer;
+import Util.Metrics;
 
 public class MessageDAO {
+    /**
+     * Rows the driver reads at a time when messages are streamed, set with {@code message.stream.fetchSize}.
+     */
+    private static final int STREAM_FETCH_SIZE = Integer.getInteger("message.stream.fetchSize", 500);
+
+    /**
+     * Streams that may hold a connection at once, set with {@code message.stream.maxConcurrent}. It defaults
+     * to half the pool, so slow readers can never take every connection from short queries.
+     */
+    private static final int STREAM_MAX_CONCURRENT = Integer.getInteger("message.stream.maxConcurrent",
+        Math.max(1, ConnectionUtil.getPool().getMaxSize() / 2));
+
+    /**
+     * Milliseconds a stream waits for one of the {@link #STREAM_MAX_CONCURRENT} slots, set with
+     * {@code message.stream.acquireTimeoutMs}.
+     */
+    private static final long STREAM_ACQUIRE_TIMEOUT_MILLIS = Long.getLong("message.stream.acquireTimeoutMs", 5000);
+
+    private static final Semaphore STREAM_PERMITS = new Semaphore(STREAM_MAX_CONCURRENT, true);
+
+    /**
+     * Time spent in each method, exported through {@link Metrics}.
+     */
+    private static final LatencyTimer INSERT_MESSAGE_TIMER = Metrics.daoTimer("MessageDAO", "insertMessage");
+    private static final LatencyTimer INSERT_MESSAGE_IF_ACCOUNT_EXISTS_TIMER = Metrics.daoTimer("MessageDAO", "insertMessageIfAccountExists");
+    private static final LatencyTimer INSERT_MESSAGES_TIMER = Metrics.daoTimer("MessageDAO", "insertMessages");
+    private static final LatencyTimer GET_ALL_MESSAGE_TIMER = Metrics.daoTimer("MessageDAO", "getAllMessage");
+    private static final LatencyTimer GET_MESSAGE_PAGE_TIMER = Metrics.daoTimer("MessageDAO", "getMessagePage");
+    private static final LatencyTimer GET_ALL_MESSAGE_BY_ACCOUNT_TIMER = Metrics.daoTimer("MessageDAO", "getAllMessageByAccount");
+    private static final LatencyTimer GET_TIMELINE_TIMER = Metrics.daoTimer("MessageDAO", "getTimeline");
+    private static final LatencyTimer GET_MESSAGE_BY_ID_TIMER = Metrics.daoTimer("MessageDAO", "getMessageByID");
+    private static final LatencyTimer GET_MESSAGES_BY_IDS_TIMER = Metrics.daoTimer("MessageDAO", "getMessagesByIDs");
+    private static final LatencyTimer DELETE_MESSAGE_BY_ID_TIMER = Metrics.daoTimer("MessageDAO", "deleteMessageByID");
+    private static final LatencyTimer UPDATE_MESSAGE_TIMER = Metrics.daoTimer("MessageDAO", "updateMessage");
+    private static final LatencyTimer STREAM_ALL_MESSAGE_TIMER = Metrics.daoTimer("MessageDAO", "streamAllMessage");
+    private static final LatencyTimer STREAM_ALL_MESSAGE_BY_ACCOUNT_TIMER = Metrics.daoTimer("MessageDAO", "streamAllMessageByAccount");
+
     /**
      * @param message Takes in a {@code Message} object to process and insert a new message into the database.
      * @return
      */
     public Message insertMessage(Message message){
-        Connection connection = ConnectionUtil.getConnection();
+        long start = INSERT_MESSAGE_TIMER.start();
+        Connection connection = null;
         try{
+            connection = ConnectionUtil.getConnection();
             String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch ) VALUES (?, ?, ?);";
             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
 
@@ -35,18 +83,141 @@ public class MessageDAO {
             }
         } catch(SQLException e){
             e.printStackTrace();
+        } finally {
+            INSERT_MESSAGE_TIMER.record(start);
+            if(connection != null){
+                try{
+                    connection.close();
+                } catch (SQLException e){
+                    e.printStackTrace();
+                }
+            }
         }
         return null;
     }
 
     /**
-     * @return {@code List} of {@code Message} from the entire database.  
+     * Insert a message only if its poster exists, checked in the same statement with {@code INSERT ... SELECT},
+     * so there is one round trip and the account can not disappear between the check and the insert.
+     * @param message Takes in a {@code Message} object to process and insert a new message into the database.
+     * @return {@code MessageInsertResult} with the stored message, {@code NO_SUCH_ACCOUNT} if no row was
+     * inserted, or {@code FAILED} if the database reported an error.
+     */
+    public MessageInsertResult insertMessageIfAccountExists(Message message){
+        long start = INSERT_MESSAGE_IF_ACCOUNT_EXISTS_TIMER.start();
+        Connection connection = null;
+        try{
+            connection = ConnectionUtil.getConnection();
+            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                + "SELECT account_id, CAST(? AS VARCHAR(255)), CAST(? AS BIGINT) FROM account WHERE account_id = ?;";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+
+            preparedStatement.setString(1, message.message_text);
+            preparedStatement.setLong(2, message.time_posted_epoch);
+            preparedStatement.setInt(3, message.posted_by);
+
+            if(preparedStatement.executeUpdate() == 0){
+                return MessageInsertResult.rejected(MessageInsertResult.Status.NO_SUCH_ACCOUNT);
+            }
+
+            ResultSet resultSet = preparedStatement.getGeneratedKeys();
+            if(resultSet.next()){
+                int generated_id = (int) resultSet.getLong(1);
+                return MessageInsertResult.inserted(new Message( generated_id,
+                                    message.posted_by, 
+                                    message.message_text, 
+                                    message.time_posted_epoch
+                                ));
+            }
+        } catch(SQLException e){
+            e.printStackTrace();
+        } finally {
+            INSERT_MESSAGE_IF_ACCOUNT_EXISTS_TIMER.record(start);
+            if(connection != null){
+                try{
+                    connection.close();
+                } catch (SQLException e){
+                    e.printStackTrace();
+                }
+            }
+        }
+        return MessageInsertResult.rejected(MessageInsertResult.Status.FAILED);
+    }
+
+    /**
+     * Insert many messages with one JDBC batch in a single transaction, so they share one statement and one
+     * commit. Either every message is stored or none are.
+     * @param messages Takes in a {@code List} of {@code Message} to insert, already validated.
+     * @return {@code List} of {@code Message} with their generated IDs, in the same order, or {@code null}
+     * if the batch failed and was rolled back.
+     */
+    public List<Message> insertMessages(List<Message> messages){
+        if(messages.isEmpty()){
+            return new ArrayList<>();
+        }
+        long start = INSERT_MESSAGES_TIMER.start();
+        Connection connection = null;
+        try{
+            connection = ConnectionUtil.getConnection();
+            connection.setAutoCommit(false);
+            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch ) VALUES (?, ?, ?);";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+
+            for(Message message : messages){
+                preparedStatement.setInt(1, message.posted_by);
+                preparedStatement.setString(2, message.message_text);
+                preparedStatement.setLong(3, message.time_posted_epoch);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+
+            List<Message> inserted = new ArrayList<>(messages.size());
+            ResultSet resultSet = preparedStatement.getGeneratedKeys();
+            for(Message message : messages){
+                if(!resultSet.next()){
+                    connection.rollback();
+                    return null;
+                }
+                inserted.add(new Message( (int) resultSet.getLong(1),
+                                          message.posted_by,
+                                          message.message_text,
+                                          message.time_posted_epoch
+                                        ));
+            }
+            connection.commit();
+            return inserted;
+        } catch(SQLException e){
+            e.printStackTrace();
+            if(connection != null){
+                try{
+                    connection.rollback();
+                } catch (SQLException rollbackError){
+                    rollbackError.printStackTrace();
+                }
+            }
+        } finally {
+            INSERT_MESSAGES_TIMER.record(start);
+            if(connection != null){
+                try{
+                    connection.close();
+                } catch (SQLException e){
+                    e.printStackTrace();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code List} of {@code Message} from the entire database.
      */
     public List<Message> getAllMessage(){
-        Connection connection = ConnectionUtil.getConnection();
+        long start = GET_ALL_MESSAGE_TIMER.start();
+        Connection connection = null;
         List<Message> messages = new ArrayList<>();
 
         try {
+            connection = ConnectionUtil.getConnection();
             String sql = "SELECT * FROM message;";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             ResultSet resultSet = preparedStatement.executeQuery();
@@ -63,6 +234,52 @@ public class MessageDAO {
         } catch (SQLException e) {
             e.printStackTrace();
         }  finally {
+            GET_ALL_MESSAGE_TIMER.record(start);
+            if(connection != null){
+                try{
+                    connection.close();
+                } catch (SQLException e){
+                    e.printStackTrace();
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Get one page of messages in {@code message_id} order, starting after a cursor. The primary key index is
+     * scanned from the cursor, so the cost of a page does not grow with the size of the table.
+     * @param after_id Takes in a {@code int} message ID to start after, or {@code 0} for the first page.
+     * @param limit Takes in a {@code int} for the most messages to return.
+     * @return {@code List} of {@code Message} with at most {@code limit} messages, or {@code null} if the
+     * read failed.
+     */
+    public List<Message> getMessagePage(int after_id, int limit){
+        long start = GET_MESSAGE_PAGE_TIMER.start();
+        Connection connection = null;
+        List<Message> messages = new ArrayList<>();
+        try {
+            connection = ConnectionUtil.getConnection();
+            String sql = "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?;";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, after_id);
+            preparedStatement.setInt(2, limit);
+            ResultSet resultSet = preparedStatement.executeQuery();
+
+            while(resultSet.next()){
+                Message message = new Message(
+                    resultSet.getInt("message_id"),
+                    resultSet.getInt("posted_by"),
+                    resultSet.getString("message_text"),
+                    resultSet.getLong("time_posted_epoch")
+                );
+                messages.add(message);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            messages = null;
+        } finally {
+            GET_MESSAGE_PAGE_TIMER.record(start);
             if(connection != null){
                 try{
                     connection.close();
@@ -77,13 +294,16 @@ public class MessageDAO {
     /**
      * Get all message by an account ID instead of just getting all message in database.
      * @param account Takes in a {@code int} for the account ID to process the request.
-     * @return {@code List} of {@code Message} from all the message that user has sent. 
+     * @return {@code List} of {@code Message} from all the message that user has sent, in {@code message_id}
+     * order, or {@code null} if the read failed.
      */
     public List<Message> getAllMessage(int account_id){
-        Connection connection = ConnectionUtil.getConnection();
+        long start = GET_ALL_MESSAGE_BY_ACCOUNT_TIMER.start();
+        Connection connection = null;
         List<Message> messages = new ArrayList<>();
         try {
-            String sql  = "SELECT * FROM message WHERE posted_by = ?;";
+            connection = ConnectionUtil.getConnection();
+            String sql  = "SELECT * FROM message WHERE posted_by = ? ORDER BY message_id;";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setInt(1, account_id);
             ResultSet resultSet = preparedStatement.executeQuery();
@@ -99,7 +319,74 @@ public class MessageDAO {
             }
         } catch (SQLException e) {
             e.printStackTrace();
+            messages = null;
+        } finally {
+            GET_ALL_MESSAGE_BY_ACCOUNT_TIMER.record(start);
+            if(connection != null){
+                try{
+                    connection.close();
+                } catch (SQLException e){
+                    e.printStackTrace();
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Get the newest messages of an account, newest first. Messages posted in the same second are ordered by
+     * {@code message_id}, which is the order of {@code message_timeline_idx}, so the index is read in order
+     * from the cursor and the scan stops after {@code limit} rows. H2 only sees that the index is already
+     * sorted when the {@code ORDER BY} starts with the index's first column, hence the {@code posted_by}.
+     * @param account_id Takes in a {@code int} for the account ID to process the request.
+     * @param before_epoch Takes in the {@code Long} time of the last message already seen, or {@code null}
+     * for the first page.
+     * @param before_id Takes in the {@code int} ID of the last message already seen. Ignored without
+     * {@code before_epoch}.
+     * @param limit Takes in a {@code int} for the most messages to return.
+     * @return {@code List} of {@code Message} with at most {@code limit} messages, or {@code null} if the
+     * read failed.
+     */
+    public List<Message> getTimeline(int account_id, Long before_epoch, int before_id, int limit){
+        long start = GET_TIMELINE_TIMER.start();
+        Connection connection = null;
+        List<Message> messages = new ArrayList<>();
+        try {
+            connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement;
+            if(before_epoch == null){
+                String sql = "SELECT * FROM message USE INDEX (message_timeline_idx) WHERE posted_by = ? "
+                    + "ORDER BY posted_by, time_posted_epoch DESC, message_id LIMIT ?;";
+                preparedStatement = connection.prepareStatement(sql);
+                preparedStatement.setInt(1, account_id);
+                preparedStatement.setInt(2, limit);
+            } else {
+                String sql = "SELECT * FROM message USE INDEX (message_timeline_idx) WHERE posted_by = ? "
+                    + "AND time_posted_epoch <= ? AND (time_posted_epoch < ? OR message_id > ?) "
+                    + "ORDER BY posted_by, time_posted_epoch DESC, message_id LIMIT ?;";
+                preparedStatement = connection.prepareStatement(sql);
+                preparedStatement.setInt(1, account_id);
+                preparedStatement.setLong(2, before_epoch);
+                preparedStatement.setLong(3, before_epoch);
+                preparedStatement.setInt(4, before_id);
+                preparedStatement.setInt(5, limit);
+            }
+            ResultSet resultSet = preparedStatement.executeQuery();
+
+            while(resultSet.next()){
+                Message message = new Message(
+                    resultSet.getInt("message_id"),
+                    resultSet.getInt("posted_by"),
+                    resultSet.getString("message_text"),
+                    resultSet.getLong("time_posted_epoch")
+                );
+                messages.add(message);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            messages = null;
         } finally {
+            GET_TIMELINE_TIMER.record(start);
             if(connection != null){
                 try{
                     connection.close();
@@ -111,13 +398,125 @@ public class MessageDAO {
         return messages;
     }
 
+    /**
+     * Stream every message in the database, in {@code message_id} order, without holding them all in memory.
+     * @param consumer Takes in a {@code MessageConsumer} that is given each message as it is read.
+     * @return {@code true} if every message was read and consumed, or {@code false} if the read failed
+     * or the consumer stopped it.
+     */
+    public boolean streamAllMessage(MessageConsumer consumer){
+        long start = STREAM_ALL_MESSAGE_TIMER.start();
+        try{
+            return streamMessages("SELECT * FROM message ORDER BY message_id;", null, consumer);
+        } finally {
+            STREAM_ALL_MESSAGE_TIMER.record(start);
+        }
+    }
+
+    /**
+     * Stream all message by an account ID, in {@code message_id} order, without holding them all in memory.
+     * @param account_id Takes in a {@code int} for the account ID to process the request.
+     * @param consumer Takes in a {@code MessageConsumer} that is given each message as it is read.
+     * @return {@code true} if every message was read and consumed, or {@code false} if the read failed
+     * or the consumer stopped it.
+     */
+    public boolean streamAllMessage(int account_id, MessageConsumer consumer){
+        long start = STREAM_ALL_MESSAGE_BY_ACCOUNT_TIMER.start();
+        try{
+            return streamMessages("SELECT * FROM message WHERE posted_by = ? ORDER BY message_id;", account_id, consumer);
+        } finally {
+            STREAM_ALL_MESSAGE_BY_ACCOUNT_TIMER.record(start);
+        }
+    }
+
+    /**
+     * Used to run a message query in H2's lazy mode, so rows are fetched {@link #STREAM_FETCH_SIZE} at a time
+     * as the consumer takes them instead of the whole result being built before the first row is returned.
+     *
+     * The connection stays borrowed until the last row is written to the client, so a slow reader holds it
+     * for as long as it takes to read. At most {@link #STREAM_MAX_CONCURRENT} streams run at once, which
+     * keeps the rest of the pool for other queries; a stream that finds no free slot within
+     * {@link #STREAM_ACQUIRE_TIMEOUT_MILLIS} fails like any other read. Streams are still watched by the
+     * pool's leak detection, so one held past {@code pool.leakThresholdMs} is reported, and cut off if
+     * {@code pool.leakReclaim} is set. That is the price of never letting a stuck client keep a connection
+     * for good; raise the threshold if clients legitimately read that slowly.
+     * @param sql Takes in the {@code String} query to run.
+     * @param account_id Takes in the {@code Integer} account ID to bind, or {@code null} if there is none.
+     * @param consumer Takes in a {@code MessageConsumer} that is given each message as it is read.
+     * @return {@code true} if every message was read and consumed.
+     */
+    private boolean streamMessages(String sql, Integer account_id, MessageConsumer consumer){
+        try{
+            if(!STREAM_PERMITS.tryAcquire(STREAM_ACQUIRE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)){
+                return false;
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try{
+            return streamMessagesWithPermit(sql, account_id, consumer);
+        } finally {
+            STREAM_PERMITS.release();
+        }
+    }
+
+    private boolean streamMessagesWithPermit(String sql, Integer account_id, MessageConsumer consumer){
+        Connection connection = null;
+        Statement lazyMode = null;
+        try {
+            connection = ConnectionUtil.getConnection();
+            lazyMode = connection.createStatement();
+            lazyMode.execute("SET LAZY_QUERY_EXECUTION TRUE");
+
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            if(account_id != null){
+                preparedStatement.setInt(1, account_id);
+            }
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+            ResultSet resultSet = preparedStatement.executeQuery();
+
+            while(resultSet.next()){
+                consumer.accept(new Message(
+                    resultSet.getInt("message_id"),
+                    resultSet.getInt("posted_by"),
+                    resultSet.getString("message_text"),
+                    resultSet.getLong("time_posted_epoch")
+                ));
+            }
+            resultSet.close();
+            return true;
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+        } finally {
+            if(lazyMode != null){
+                try{
+                    lazyMode.execute("SET LAZY_QUERY_EXECUTION FALSE");
+                    lazyMode.close();
+                } catch (SQLException e){
+                    e.printStackTrace();
+                }
+            }
+            if(connection != null){
+                try{
+                    connection.close();
+                } catch (SQLException e){
+                    e.printStackTrace();
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * @param id Take in an {@code int} message ID to get the message.
      * @return {@code Message} object with all the data to be used.
      */
     public Message getMessageByID(int id){
-        Connection connection = ConnectionUtil.getConnection();
+        long start = GET_MESSAGE_BY_ID_TIMER.start();
+        Connection connection = null;
         try {
+            connection = ConnectionUtil.getConnection();
             String sql = "SELECT * FROM message WHERE message_id = ?";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
@@ -135,6 +534,54 @@ public class MessageDAO {
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
+            GET_MESSAGE_BY_ID_TIMER.record(start);
+            if(connection != null){
+                try{
+                    connection.close();
+                } catch (SQLException e){
+                    e.printStackTrace();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Used to read many messages with one statement. The IDs are bound as one H2 array, so the SQL is the
+     * same for any number of IDs and stays in the statement cache.
+     * @param ids Take in a {@code Collection} of message IDs to get. Duplicates are allowed.
+     * @return {@code Map} of the messages found by their ID, without the IDs that do not exist, or
+     * {@code null} if the read failed.
+     */
+    public Map<Integer, Message> getMessagesByIDs(Collection<Integer> ids){
+        Map<Integer, Message> messages = new HashMap<>();
+        if(ids.isEmpty()){
+            return messages;
+        }
+        long start = GET_MESSAGES_BY_IDS_TIMER.start();
+        Connection connection = null;
+        try {
+            connection = ConnectionUtil.getConnection();
+            String sql = "SELECT * FROM message WHERE message_id = ANY(?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            preparedStatement.setObject(1, ids.toArray(new Integer[0]));
+
+            ResultSet resultSet = preparedStatement.executeQuery();
+            while(resultSet.next()){
+                Message message = new Message(
+                    resultSet.getInt("message_id"),
+                    resultSet.getInt("posted_by"),
+                    resultSet.getString("message_text"),
+                    resultSet.getLong("time_posted_epoch")
+                );
+                messages.put(message.getMessage_id(), message);
+            }
+            return messages;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            GET_MESSAGES_BY_IDS_TIMER.record(start);
             if(connection != null){
                 try{
                     connection.close();
@@ -147,28 +594,34 @@ public class MessageDAO {
     }
 
     /**
+     * Deletes the message and reads back the deleted row in the same statement, through H2's
+     * {@code OLD TABLE} delta table, so there is one round trip and no gap between the read and the delete.
      * @param message_id Take in a {@code int} message ID to be used to delete data. 
      * @return {@code Message} that includes the original message if it successfully delete or return empty
      * {@code null} if it failed to find.
      */
     public Message deleteMessageByID(int message_id){
-        Connection connection = ConnectionUtil.getConnection();
+        long start = DELETE_MESSAGE_BY_ID_TIMER.start();
+        Connection connection = null;
         try {
-            Message message = getMessageByID(message_id);
-
-            if(message != null){
-                String sql = "DELETE from message WHERE message_id = ?;";
-                PreparedStatement preparedStatement = connection.prepareStatement(sql);
-                preparedStatement.setInt(1, message_id);
-                int aff = preparedStatement.executeUpdate();
+            connection = ConnectionUtil.getConnection();
+            String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?);";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, message_id);
 
-                if(aff > 0){
-                    return message;
-                }
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if(resultSet.next()){
+                return new Message(
+                    resultSet.getInt("message_id"),
+                    resultSet.getInt("posted_by"),
+                    resultSet.getString("message_text"),
+                    resultSet.getLong("time_posted_epoch")
+                );
             }
         } catch (SQLException e) {
             e.printStackTrace();
         } finally {
+            DELETE_MESSAGE_BY_ID_TIMER.record(start);
             if(connection != null){
                 try{
                     connection.close();
@@ -181,27 +634,37 @@ public class MessageDAO {
     }
 
     /**
+     * Updates the message and reads back the updated row in the same statement, through H2's
+     * {@code FINAL TABLE} delta table, so there is one round trip and no gap between the write and the read.
      * @param message_id Take in a {@code int} message ID to be used to delete data.
      * @param newMessage Using a {@code String} to change the message with the new message.
      * @return {@code Message} object with the updated message and all the other information,
      * or null if it failed to find the message.
      */
     public Message updateMessage(int message_id, String newMessage){
-        Connection connection = ConnectionUtil.getConnection();
+        long start = UPDATE_MESSAGE_TIMER.start();
+        Connection connection = null;
         try{
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?;";
+            connection = ConnectionUtil.getConnection();
+            String sql = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ?);";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             
             preparedStatement.setString(1, newMessage);
             preparedStatement.setInt(2, message_id);
 
-            int aff = preparedStatement.executeUpdate();
-            if(aff > 0){
-                return getMessageByID(message_id);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if(resultSet.next()){
+                return new Message(
+                    resultSet.getInt("message_id"),
+                    resultSet.getInt("posted_by"),
+                    resultSet.getString("message_text"),
+                    resultSet.getLong("time_posted_epoch")
+                );
             }
         } catch(SQLException e){
             e.printStackTrace();
         } finally {
+            UPDATE_MESSAGE_TIMER.record(start);
             if(connection != null){
                 try{
                     connection.close();
@@ -0,0 +1,71 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import Model.Message;
+import Util.Histogram;
+import Util.MicroBatcher;
+
+/**
+ * Queues message inserts from many threads and writes them together, so concurrent posts share one
+ * statement and one commit instead of each forcing its own. A {@link MicroBatcher} collects the inserts
+ * that arrive within {@code windowMicros} of the first, up to {@code maxBatchSize}, and they are stored
+ * with {@link MessageDAO#insertMessages(List)}. Callers only get their message back after that commit,
+ * so an insert that returns is exactly as durable as one written alone. If writing a group throws, its
+ * callers get the exception and the writer goes on with the next group.
+ */
+public class MessageGroupCommitter {
+    private volatile MessageDAO messageDAO;
+    private final MicroBatcher<Message, Message> batcher;
+
+    /**
+     * @param messageDAO Takes in the {@code MessageDAO} to write batches with.
+     * @param maxBatchSize Takes in the {@code int} most inserts to commit together.
+     * @param windowMicros Takes in the {@code long} microseconds to wait for more inserts after the first.
+     */
+    public MessageGroupCommitter(MessageDAO messageDAO, int maxBatchSize, long windowMicros){
+        this.messageDAO = messageDAO;
+        this.batcher = new MicroBatcher<>("message-group-commit", maxBatchSize, windowMicros, this::commit);
+    }
+
+    /**
+     * Used to insert a message as part of the next group commit. Blocks until the group is committed.
+     * @param message Takes in a {@code Message} that was already validated.
+     * @return {@code Message} with its generated ID, or {@code null} if it could not be stored.
+     */
+    public Message insert(Message message){
+        return batcher.submit(message);
+    }
+
+    /**
+     * @param messageDAO Takes in the {@code MessageDAO} to write the next batches with.
+     */
+    public void setMessageDAO(MessageDAO messageDAO){
+        this.messageDAO = messageDAO;
+    }
+
+    /**
+     * @return {@code Histogram} of how many inserts were committed together.
+     */
+    public Histogram getBatchSizes(){
+        return batcher.getBatchSizes();
+    }
+
+    /**
+     * Used to write one group. If the group fails as a whole, each insert is retried on its own, so one bad
+     * row does not fail the others that happened to be queued with it.
+     */
+    private List<Message> commit(List<Message> messages){
+        MessageDAO messageDAO = this.messageDAO;
+        List<Message> inserted = messages.size() == 1 ? null : messageDAO.insertMessages(messages);
+        if(inserted != null){
+            return inserted;
+        }
+        List<Message> results = new ArrayList<>(messages.size());
+        for(Message message : messages){
+            results.add(messageDAO.insertMessage(message));
+        }
+        return results;
+    }
+}
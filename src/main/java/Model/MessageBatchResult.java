@@ -0,0 +1,84 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of one entry of a batch of new messages. Exactly one of
+ * message and error is set.
+ */
+public class MessageBatchResult {
+    /**
+     * The position of the entry in the batch that was sent, starting at 0.
+     */
+    public int index;
+    /**
+     * The message as it was stored, including its message_id, or null if it was not stored.
+     */
+    public Message message;
+    /**
+     * Why the entry was not stored, or null if it was.
+     */
+    public String error;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageBatchResult(){
+    }
+    /**
+     * @param index
+     * @param message
+     * @param error
+     */
+    public MessageBatchResult(int index, Message message, String error){
+        this.index = index;
+        this.message = message;
+        this.error = error;
+    }
+    /**
+     * @return index
+     */
+    public int getIndex() {
+        return index;
+    }
+    /**
+     * @param index
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    /**
+     * @return message
+     */
+    public Message getMessage() {
+        return message;
+    }
+    /**
+     * @param message
+     */
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+    /**
+     * @return error
+     */
+    public String getError() {
+        return error;
+    }
+    /**
+     * @param error
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "index=" + index +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,82 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of creating one message, so a caller can tell a message that
+ * was rejected apart from one that could not be stored.
+ */
+public class MessageInsertResult {
+    /**
+     * What happened to the message.
+     */
+    public enum Status {
+        /**
+         * The message was stored.
+         */
+        INSERTED,
+        /**
+         * The message text was blank or too long.
+         */
+        INVALID,
+        /**
+         * posted_by does not refer to an existing account.
+         */
+        NO_SUCH_ACCOUNT,
+        /**
+         * The database could not store the message.
+         */
+        FAILED
+    }
+
+    private final Status status;
+    private final Message message;
+
+    private MessageInsertResult(Status status, Message message){
+        this.status = status;
+        this.message = message;
+    }
+
+    /**
+     * @param message
+     * @return a result for a message that was stored.
+     */
+    public static MessageInsertResult inserted(Message message){
+        return new MessageInsertResult(Status.INSERTED, message);
+    }
+
+    /**
+     * @param status
+     * @return a result for a message that was not stored.
+     */
+    public static MessageInsertResult rejected(Status status){
+        if(status == Status.INSERTED){
+            throw new IllegalArgumentException("A rejected message can not be INSERTED");
+        }
+        return new MessageInsertResult(status, null);
+    }
+
+    /**
+     * @return status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the stored message including its message_id, or null if it was not stored.
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageInsertResult{" +
+                "status=" + status +
+                ", message=" + message +
+                '}';
+    }
+}
@@ -6,13 +6,23 @@ import DAO.AccountDAO;
 import DAO.MessageDAO;
 import Model.Account;
 import Model.Message;
+import Util.ConnectionUtil;
+import Util.IntBitSet;
 
 public class AccountService {
     private AccountDAO accountDAO = null;
-    private static AccountService instance = null;
+
+    /**
+     * Every account ID in the database, loaded at startup and kept up to date by {@link #createAccount(Account)}.
+     * Accounts are never deleted, so this answers {@link #checkAccountExist(int)} without a query. It is
+     * {@code null} while it could not be loaded, and then the DAO is asked instead.
+     */
+    private volatile IntBitSet accountIDs = null;
     
     private AccountService(){
         this.accountDAO = new AccountDAO();
+        loadAccountIDs();
+        ConnectionUtil.addResetListener(this::loadAccountIDs);
     }
 
 /* 
@@ -21,14 +31,20 @@ public class AccountService {
     }
 */
 
+    /**
+     * Holds the instance, so it is created the first time {@link #getInstance()} is called. The JVM makes
+     * class initialization thread-safe, so {@code getInstance()} needs no lock, and no virtual thread is
+     * pinned to its carrier while waiting for one.
+     */
+    private static class Holder {
+        private static final AccountService instance = new AccountService();
+    }
+
     /**
      * @return The instance of the AccountService object.
      */
-    public static synchronized AccountService getInstance(){
-        if(instance == null){
-            instance = new AccountService();
-        }
-        return instance;
+    public static AccountService getInstance(){
+        return Holder.instance;
     }
 
     /**
@@ -36,6 +52,19 @@ public class AccountService {
      */
     public void setAccountDAO(AccountDAO accountDAO){
         this.accountDAO = accountDAO;
+        loadAccountIDs();
+    }
+
+    /**
+     * Used to build the account ID index from the database and swap it in once it is complete.
+     */
+    private void loadAccountIDs(){
+        IntBitSet loaded = new IntBitSet(1024);
+        if(accountDAO.loadAccountIDs(loaded::add)){
+            accountIDs = loaded;
+        } else {
+            accountIDs = null;
+        }
     }
 
     /**
@@ -46,11 +75,17 @@ public class AccountService {
      * create a new account.
      */
     public Account createAccount(Account account){
-        if(accountDAO.getAccountByUsername(account.getUsername()) == null 
-            && account.getUsername() != ""
+        if(account.getUsername() != null
+            && !account.getUsername().isBlank()
+            && account.getPassword() != null
             && account.getPassword().length() >= 4)
         {
-            return accountDAO.insertAccount(account);
+            Account newAccount = accountDAO.insertAccount(account);
+            IntBitSet index = accountIDs;
+            if(newAccount != null && index != null){
+                index.add(newAccount.getAccount_id());
+            }
+            return newAccount;
         }
         return null;
     }
@@ -83,6 +118,10 @@ public class AccountService {
      * @return {@code True} if the account exist or {@code false} if the account doesn't exist.
      */
     public boolean checkAccountExist(int id){
+        IntBitSet index = accountIDs;
+        if(index != null){
+            return index.contains(id);
+        }
         return accountDAO.checkIfAccountExist(id);
     }
 }
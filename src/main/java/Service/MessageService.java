@@ -2,16 +2,117 @@ package Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
+import DAO.MessageBatchLoader;
+import DAO.MessageConsumer;
 import DAO.MessageDAO;
+import DAO.MessageGroupCommitter;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageInsertResult;
+import Model.MessagePage;
+import Util.AccountMessageCache;
+import Util.BoundedCache;
+import Util.ConnectionUtil;
+import Util.JsonCodec;
+import Util.Metrics;
+import Util.SingleFlight;
 
 public class MessageService {
+    /**
+     * Number of messages on a page when the caller does not ask for a size.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    /**
+     * Largest page the server will return, no matter what size the caller asks for.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * Most messages accepted in one call to {@link #createMessages(List)}.
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+    /**
+     * Most IDs accepted in one call to {@link #getMessagesByIDs(List)}.
+     */
+    public static final int MAX_LOOKUP_SIZE = 1000;
+
     private MessageDAO messageDAO = null;
-    private static MessageService instance = null;
+
+    /**
+     * Read-through cache of single messages by ID, sized with {@code message.cache.maxSize} and
+     * {@code message.cache.ttlMs}. Every write path below drops the entry it touches.
+     */
+    private final BoundedCache<Integer, Message> messageCache = new BoundedCache<>(
+        Integer.getInteger("message.cache.maxSize", 10000),
+        Long.getLong("message.cache.ttlMs", 60000)
+    );
+
+    /**
+     * Messages already encoded as JSON, by ID, sized with {@code message.jsonCache.maxSize} and the same
+     * time to live as {@link #messageCache}. It is dropped by the same write paths, so a response built
+     * from it has exactly the bytes encoding the current message would give.
+     */
+    private final BoundedCache<Integer, byte[]> messageJsonCache = new BoundedCache<>(
+        Integer.getInteger("message.jsonCache.maxSize", 10000),
+        Long.getLong("message.cache.ttlMs", 60000)
+    );
+
+    private final JsonCodec json = JsonCodec.getInstance();
+
+    /**
+     * Every message of recently read accounts, sized with {@code message.accountCache.maxBytes} and
+     * {@code message.accountCache.maxMessages}. New and deleted messages patch the cached list in place
+     * of dropping it; an edit drops it.
+     */
+    private final AccountMessageCache accountMessageCache = new AccountMessageCache(
+        Long.getLong("message.accountCache.maxBytes", 32L * 1024 * 1024),
+        Integer.getInteger("message.accountCache.maxMessages", 10000)
+    );
+
+    /**
+     * Concurrent loads of the same message, or of the same account's messages, share one query. Every
+     * write path below forgets the key it touches, so no caller arriving after a write gets a load that
+     * started before it. The key is forgotten before the caches are written, so a load joined between the
+     * two can not be stored over the write.
+     */
+    private final SingleFlight<Integer, Message> messageFlight = new SingleFlight<>();
+    private final SingleFlight<Integer, List<Message>> accountMessagesFlight = new SingleFlight<>();
+
+    /**
+     * Writer that commits concurrent inserts together, or {@code null} when {@code message.groupCommit}
+     * is not set and every insert commits on its own.
+     */
+    private volatile MessageGroupCommitter groupCommitter = null;
+
+    /**
+     * Loader that reads concurrent lookups of different messages together, or {@code null} when
+     * {@code message.batchLoad} is not set and every lookup runs its own query.
+     */
+    private volatile MessageBatchLoader batchLoader = null;
 
     private MessageService(){
         this.messageDAO = new MessageDAO();
+        if(Boolean.getBoolean("message.groupCommit")){
+            setGroupCommitter(new MessageGroupCommitter(messageDAO,
+                Integer.getInteger("message.groupCommit.maxBatch", 64),
+                Long.getLong("message.groupCommit.windowMicros", 1000)));
+        }
+        if(Boolean.getBoolean("message.batchLoad")){
+            setBatchLoader(new MessageBatchLoader(messageDAO,
+                Integer.getInteger("message.batchLoad.maxBatch", 64),
+                Long.getLong("message.batchLoad.windowMicros", 500)));
+        }
+        ConnectionUtil.addResetListener(messageCache::clear);
+        ConnectionUtil.addResetListener(messageJsonCache::clear);
+        ConnectionUtil.addResetListener(messageFlight::clear);
+        ConnectionUtil.addResetListener(accountMessagesFlight::clear);
+        ConnectionUtil.addResetListener(accountMessageCache::clear);
+        Metrics.registerSingleFlight("message", messageFlight);
+        Metrics.registerSingleFlight("account_messages", accountMessagesFlight);
+        Metrics.registerAccountMessageCache(accountMessageCache);
+        Metrics.registerCache("message", messageCache);
+        Metrics.registerCache("message_json", messageJsonCache);
     }
     
 /*
@@ -20,14 +121,20 @@ public class MessageService {
     }
 */
 
+    /**
+     * Holds the instance, so it is created the first time {@link #getInstance()} is called. The JVM makes
+     * class initialization thread-safe, so {@code getInstance()} needs no lock, and no virtual thread is
+     * pinned to its carrier while waiting for one.
+     */
+    private static class Holder {
+        private static final MessageService instance = new MessageService();
+    }
+
     /**
      * @return The instance of the MessageService object.
      */
-    public static synchronized MessageService getInstance(){
-        if(instance == null){
-            instance = new MessageService();
-        }
-        return instance;
+    public static MessageService getInstance(){
+        return Holder.instance;
     }
 
     /**
@@ -35,20 +142,194 @@ public class MessageService {
      */
     public void setMessageDAO(MessageDAO messageDAO){
         this.messageDAO = messageDAO;
+        MessageGroupCommitter groupCommitter = this.groupCommitter;
+        if(groupCommitter != null){
+            groupCommitter.setMessageDAO(messageDAO);
+        }
+        MessageBatchLoader batchLoader = this.batchLoader;
+        if(batchLoader != null){
+            batchLoader.setMessageDAO(messageDAO);
+        }
+        messageCache.clear();
+        messageJsonCache.clear();
+        messageFlight.clear();
+        accountMessagesFlight.clear();
+        accountMessageCache.clear();
+    }
+
+    /**
+     * Used to turn group commit on or off while running. The committer's batch sizes are exported through
+     * {@link Metrics}.
+     * @param groupCommitter Takes in the {@code MessageGroupCommitter} for {@link #createMessage(Message)}
+     * to insert through, or {@code null} to insert every message on its own.
+     */
+    public void setGroupCommitter(MessageGroupCommitter groupCommitter){
+        if(groupCommitter != null){
+            groupCommitter.setMessageDAO(messageDAO);
+            Metrics.valueHistogram("message_batch_size", "Operations on messages run together as one batch.",
+                Metrics.labels("batch", "group_commit"), groupCommitter.getBatchSizes());
+        }
+        this.groupCommitter = groupCommitter;
+    }
+
+    /**
+     * @return {@code MessageGroupCommitter} used by {@link #createMessage(Message)}, or {@code null} if
+     * group commit is off.
+     */
+    public MessageGroupCommitter getGroupCommitter(){
+        return groupCommitter;
+    }
+
+    /**
+     * Used to turn batch loading on or off while running. The loader's batch sizes are exported through
+     * {@link Metrics}.
+     * @param batchLoader Takes in the {@code MessageBatchLoader} for {@link #getMessageByID(int)} to read
+     * through, or {@code null} to read every message with its own query.
+     */
+    public void setBatchLoader(MessageBatchLoader batchLoader){
+        if(batchLoader != null){
+            batchLoader.setMessageDAO(messageDAO);
+            Metrics.valueHistogram("message_batch_size", "Operations on messages run together as one batch.",
+                Metrics.labels("batch", "load"), batchLoader.getBatchSizes());
+        }
+        this.batchLoader = batchLoader;
+    }
+
+    /**
+     * @return {@code MessageBatchLoader} used by {@link #getMessageByID(int)}, or {@code null} if batch
+     * loading is off.
+     */
+    public MessageBatchLoader getBatchLoader(){
+        return batchLoader;
+    }
+
+    /**
+     * @return {@code BoundedCache} in front of {@link #getMessageByID(int)}, used to read its counters.
+     */
+    public BoundedCache<Integer, Message> getMessageCache(){
+        return messageCache;
+    }
+
+    /**
+     * @return {@code AccountMessageCache} in front of {@link #getAllAccountMessage(int)}, used to read its
+     * counters.
+     */
+    public AccountMessageCache getAccountMessageCache(){
+        return accountMessageCache;
     }
 
-    public Message createMessage(Message message){
-        if(message.getMessage_text().equals("") 
-            || message.getMessage_text().length() > 255
-            || !AccountService.getInstance().checkAccountExist(message.getPosted_by())){
+    /**
+     * @return {@code SingleFlight} behind {@link #getMessageByID(int)}, used to read its counters.
+     */
+    public SingleFlight<Integer, Message> getMessageFlight(){
+        return messageFlight;
+    }
+
+    /**
+     * @return {@code SingleFlight} behind {@link #getAllAccountMessage(int)}, used to read its counters.
+     */
+    public SingleFlight<Integer, List<Message>> getAccountMessagesFlight(){
+        return accountMessagesFlight;
+    }
+
+    /**
+     * Used to create a new message. The message text is checked here; whether the poster exists is
+     * checked against the account index and again by the insert itself, in the same statement.
+     * @param message Takes in the {@code Message} to create.
+     * @return {@code MessageInsertResult} with the stored message, or why it was not stored.
+     */
+    public MessageInsertResult createMessage(Message message){
+        if(validateMessageText(message) != null){
+            return MessageInsertResult.rejected(MessageInsertResult.Status.INVALID);
+        }
+        if(!AccountService.getInstance().checkAccountExist(message.getPosted_by())){
+            return MessageInsertResult.rejected(MessageInsertResult.Status.NO_SUCH_ACCOUNT);
+        }
+
+        long stamp = accountMessageCache.getRemovalStamp(message.getPosted_by());
+        MessageInsertResult result;
+        MessageGroupCommitter groupCommitter = this.groupCommitter;
+        if(groupCommitter != null){
+            Message nMssage = groupCommitter.insert(message);
+            result = nMssage != null
+                ? MessageInsertResult.inserted(nMssage)
+                : MessageInsertResult.rejected(MessageInsertResult.Status.FAILED);
+        } else {
+            result = messageDAO.insertMessageIfAccountExists(message);
+        }
+        if(result.getMessage() != null){
+            accountMessagesFlight.forget(message.getPosted_by());
+            accountMessageCache.added(result.getMessage(), stamp);
+        }
+        return result;
+    }
+
+    /**
+     * Used to create many messages at once. Every entry is validated on its own, and the valid ones are
+     * stored together in one transaction.
+     * @param messages Takes in a {@code List} of {@code Message} to create, at most {@link #MAX_BATCH_SIZE}.
+     * @return {@code List} of {@code MessageBatchResult}, one per entry in the same order, or {@code null}
+     * if the batch is too large.
+     */
+    public List<MessageBatchResult> createMessages(List<Message> messages){
+        if(messages.size() > MAX_BATCH_SIZE){
             return null;
         }
 
-        Message nMssage = messageDAO.insertMessage(message);
-        if(nMssage != null){
-            return nMssage;
+        List<MessageBatchResult> results = new ArrayList<>(messages.size());
+        List<Message> valid = new ArrayList<>();
+        List<MessageBatchResult> pending = new ArrayList<>();
+        for(int i = 0; i < messages.size(); i++){
+            Message message = messages.get(i);
+            String error = validateMessageText(message);
+            if(error == null && !AccountService.getInstance().checkAccountExist(message.getPosted_by())){
+                error = "posted_by does not refer to an existing account";
+            }
+            MessageBatchResult result = new MessageBatchResult(i, null, error);
+            results.add(result);
+            if(error == null){
+                valid.add(message);
+                pending.add(result);
+            }
         }
 
+        long[] stamps = new long[valid.size()];
+        for(int i = 0; i < valid.size(); i++){
+            stamps[i] = accountMessageCache.getRemovalStamp(valid.get(i).getPosted_by());
+        }
+        List<Message> inserted = messageDAO.insertMessages(valid);
+        if(inserted != null){
+            for(int i = 0; i < inserted.size(); i++){
+                Message message = inserted.get(i);
+                accountMessagesFlight.forget(message.getPosted_by());
+                accountMessageCache.added(message, stamps[i]);
+            }
+        }
+        for(int i = 0; i < pending.size(); i++){
+            if(inserted != null){
+                pending.get(i).setMessage(inserted.get(i));
+            } else {
+                pending.get(i).setError("message could not be stored");
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Used to check the text of a new message before it is stored.
+     * @param message Takes in the {@code Message} to check.
+     * @return {@code String} describing what is wrong with the message, or {@code null} if it is valid.
+     */
+    private String validateMessageText(Message message){
+        if(message == null){
+            return "message is missing";
+        }
+        if(message.getMessage_text() == null || message.getMessage_text().equals("")){
+            return "message_text is blank";
+        }
+        if(message.getMessage_text().length() > 255){
+            return "message_text is over 255 characters";
+        }
         return null;
     }
 
@@ -61,23 +342,117 @@ public class MessageService {
     }
 
     /**
+     * Used to stream all the message in the system without holding them in memory.
+     * @param consumer Takes in a {@code MessageConsumer} that is given each message as it is read.
+     * @return {@code true} if every message was streamed, or {@code false} if it failed part way.
+     */
+    public boolean streamAllMessage(MessageConsumer consumer){
+        return messageDAO.streamAllMessage(consumer);
+    }
+
+    /**
+     * Used to get one page of the messages in the system, in {@code message_id} order.
+     * @param after_id Takes in a {@code int} message ID to start after, or {@code 0} for the first page.
+     * @param limit Takes in a {@code int} page size, which is capped at {@link #MAX_PAGE_SIZE}.
+     * @return {@code MessagePage} with the messages and the cursor of the next page, or {@code null}
+     * if the messages could not be read.
+     * @throws IllegalArgumentException Throws an {@code IllegalArgumentException} if the cursor or limit
+     * is invalid.
+     */
+    public MessagePage getMessagePage(int after_id, int limit){
+        if(after_id < 0 || limit < 1){
+            throw new IllegalArgumentException("Invalid page after " + after_id + " with limit " + limit);
+        }
+        limit = Math.min(limit, MAX_PAGE_SIZE);
+
+        List<Message> messages = messageDAO.getMessagePage(after_id, limit + 1);
+        if(messages == null){
+            return null;
+        }
+        String next_cursor = null;
+        if(messages.size() > limit){
+            messages = messages.subList(0, limit);
+            next_cursor = String.valueOf(messages.get(limit - 1).getMessage_id());
+        }
+        return new MessagePage(messages, next_cursor);
+    }
+
+    /**
+     * On a cache miss, concurrent callers for the same message share one query, and with batch loading
+     * on, lookups of different messages are read together.
      * @param message_id Takes in a {@code int} message_id to get information about a certain message.
      * @return Message object from the {@code int} message_id, or returns {@code null} if it doesn't exist. 
      */
     public Message getMessageByID(int message_id){
+        return messageCache.getOrLoad(message_id, id -> messageFlight.load(id, this::loadMessage));
+    }
+
+    /**
+     * Used to get a message already encoded as JSON, so a hot message is only encoded once.
+     * @param message_id Takes in a {@code int} message_id to get information about a certain message.
+     * @return {@code byte[]} of the message as UTF-8 JSON, which must not be modified, or {@code null} if
+     * it doesn't exist.
+     */
+    public byte[] getMessageJson(int message_id){
+        return messageJsonCache.getOrLoad(message_id, id -> {
+            Message message = getMessageByID(id);
+            return message == null ? null : json.encodeMessage(message);
+        });
+    }
+
+    private Message loadMessage(int message_id){
+        MessageBatchLoader batchLoader = this.batchLoader;
+        if(batchLoader != null){
+            return batchLoader.load(message_id);
+        }
         return messageDAO.getMessageByID(message_id);
     }
 
+    /**
+     * Used to get many messages at once. The cached ones are read from the cache and the rest with one
+     * query.
+     * @param message_ids Takes in a {@code List} of message IDs, at most {@link #MAX_LOOKUP_SIZE}.
+     * Duplicates are allowed.
+     * @return {@code List} with one entry per ID in the same order, the message or {@code null} if it does
+     * not exist, or {@code null} if there are too many IDs or the read failed.
+     */
+    public List<Message> getMessagesByIDs(List<Integer> message_ids){
+        if(message_ids.size() > MAX_LOOKUP_SIZE){
+            return null;
+        }
+        Map<Integer, Message> found = messageCache.getAllOrLoad(message_ids, messageDAO::getMessagesByIDs);
+        if(found == null){
+            return null;
+        }
+        List<Message> messages = new ArrayList<>(message_ids.size());
+        for(Integer message_id : message_ids){
+            messages.add(found.get(message_id));
+        }
+        return messages;
+    }
+
     /**
      * @param message_id Takes in a {@code int} message_id to get information about a certain message.
      * @return {@code Message} that includes the original message if it successfully delete or return empty
      * {@code null} if it failed to find.
      */
     public Message deleteMessageByID(int message_id){
-        return messageDAO.deleteMessageByID(message_id);
+        Message message = messageDAO.deleteMessageByID(message_id);
+        messageFlight.forget(message_id);
+        messageCache.invalidate(message_id);
+        messageJsonCache.invalidate(message_id);
+        if(message != null){
+            accountMessagesFlight.forget(message.getPosted_by());
+            accountMessageCache.removed(message);
+        }
+        return message;
     }
 
     /**
+     * The message, its JSON and its poster's list are dropped from the caches rather than replaced with the
+     * updated row, since a concurrent edit may already have committed a newer one; the next read loads
+     * whichever committed last. The message cache is dropped before the JSON cache, which encodes from it,
+     * so a JSON load that read the old message is refused by the JSON cache's write stamp.
      * @param message Take in a {@code int} message ID to be used to delete data.
      * @param newMessage Using a {@code String} to change the message with the new message.
      * @return {@code Message} object with the updated message and all the other information,
@@ -87,14 +462,87 @@ public class MessageService {
         if(newMessage == "" || newMessage.length() > 255){
             return null;
         }
-        return messageDAO.updateMessage(message_id, newMessage);
+        Message message = messageDAO.updateMessage(message_id, newMessage);
+        messageFlight.forget(message_id);
+        messageCache.invalidate(message_id);
+        messageJsonCache.invalidate(message_id);
+        if(message != null){
+            accountMessagesFlight.forget(message.getPosted_by());
+            accountMessageCache.invalidate(message.getPosted_by());
+        }
+        return message;
     }
 
         /**
+     * The list is served from {@link #accountMessageCache} when it is there. Otherwise concurrent callers
+     * for the same account share one query. The returned {@code List} is shared and can not be modified.
      * @param account Takes in a {@code int} for the account ID to process the request.
-     * @return {@code List} of {@code Message} from all the message that user has sent. 
+     * @return {@code List} of {@code Message} from all the message that user has sent, in {@code message_id}
+     * order, or {@code null} if the read failed.
      */
     public List<Message> getAllAccountMessage(int account_id){
-        return messageDAO.getAllMessage(account_id);
+        return accountMessageCache.getOrLoad(account_id,
+            id -> accountMessagesFlight.load(id, messageDAO::getAllMessage));
+    }
+
+    /**
+     * Used to get all the messages an account has sent already encoded as JSON. The encoding is kept with
+     * the cached list and built again only after a write changed it.
+     * @param account_id Takes in a {@code int} for the account ID to process the request.
+     * @return {@code byte[]} of the messages as a UTF-8 JSON array, in {@code message_id} order, which must
+     * not be modified, or {@code null} if the read failed.
+     */
+    public byte[] getAllAccountMessageJson(int account_id){
+        return accountMessageCache.getOrLoadEncoded(account_id,
+            id -> accountMessagesFlight.load(id, messageDAO::getAllMessage), json::encodeMessages);
+    }
+
+    /**
+     * Used to get the newest messages an account has sent, newest first, one page at a time.
+     * @param account_id Takes in a {@code int} for the account ID to process the request.
+     * @param before Takes in the {@code String} cursor of the previous page, or {@code null} for the first page.
+     * @param limit Takes in a {@code int} page size, which is capped at {@link #MAX_PAGE_SIZE}.
+     * @return {@code MessagePage} with the messages and the cursor of the next page, or {@code null}
+     * if the messages could not be read.
+     * @throws IllegalArgumentException Throws an {@code IllegalArgumentException} if the cursor or limit
+     * is invalid.
+     */
+    public MessagePage getTimeline(int account_id, String before, int limit){
+        if(limit < 1){
+            throw new IllegalArgumentException("Invalid page limit " + limit);
+        }
+        limit = Math.min(limit, MAX_PAGE_SIZE);
+
+        Long before_epoch = null;
+        int before_id = 0;
+        if(before != null){
+            int split = before.indexOf(':');
+            if(split < 0){
+                throw new IllegalArgumentException("Invalid cursor " + before);
+            }
+            before_epoch = Long.parseLong(before.substring(0, split));
+            before_id = Integer.parseInt(before.substring(split + 1));
+        }
+
+        List<Message> messages = messageDAO.getTimeline(account_id, before_epoch, before_id, limit + 1);
+        if(messages == null){
+            return null;
+        }
+        String next_cursor = null;
+        if(messages.size() > limit){
+            messages = messages.subList(0, limit);
+            Message last = messages.get(limit - 1);
+            next_cursor = last.getTime_posted_epoch() + ":" + last.getMessage_id();
+        }
+        return new MessagePage(messages, next_cursor);
+    }
+
+    /**
+     * @param account_id Takes in a {@code int} for the account ID to process the request.
+     * @param consumer Takes in a {@code MessageConsumer} that is given each message the user has sent.
+     * @return {@code true} if every message was streamed, or {@code false} if it failed part way.
+     */
+    public boolean streamAllAccountMessage(int account_id, MessageConsumer consumer){
+        return messageDAO.streamAllMessage(account_id, consumer);
     }
 }
@@ -0,0 +1,476 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import Model.Message;
+
+/**
+ * Keeps the full list of messages of recently read accounts, in {@code message_id} order, so a profile
+ * page can be served without a query. New and deleted messages patch the cached list instead of dropping
+ * it: a new message is inserted in place and a deleted one is removed. An edit drops the list with
+ * {@link #invalidate(int)} and the next read loads it again. A cached list is never changed once handed
+ * out; every patch builds a new one, so readers can serialize it without a lock.
+ *
+ * Adds of different messages commute, but an add is applied after its insert committed, so the message
+ * may already have been read into the list, edited or deleted by then. An add therefore never touches a
+ * row the list already has, and the caller takes {@link #getRemovalStamp(int)} before its insert: if a
+ * message in the stripe was deleted or edited since, the add drops the list rather than risk bringing
+ * back a deleted message or the text from before an edit.
+ *
+ * Reads are lock-free. Writes take the lock of the account's stripe, one of {@code STRIPES}, so a patch
+ * copying a long list only holds up writes to accounts in the same stripe.
+ *
+ * The cache is bounded by an estimate of the memory its messages take. When it is over budget a clock hand
+ * sweeps the lists and evicts the first one that was not read since the hand last passed it. Accounts with
+ * more than {@code maxMessagesPerAccount} messages are not cached at all, since copying their list on every
+ * write would cost more than reading it.
+ *
+ * A cached list can also keep its JSON encoding, built on the first {@link #getOrLoadEncoded} of the list
+ * and counted in the budget, so later reads write the same bytes without encoding again. A patch builds a
+ * new list, which starts without an encoding.
+ *
+ * A list loaded through {@link #getOrLoad(int, IntFunction)} is only stored if no write to an account in
+ * the same stripe happened while the load ran, so a slow read can not put back a list that misses a
+ * write the cache was already told about.
+ */
+public class AccountMessageCache {
+    private static final int STRIPES = 64;
+
+    /**
+     * Rough heap cost of a cached message without its text: the object, its boxed fields and the list slot.
+     */
+    private static final long MESSAGE_OVERHEAD_BYTES = 64;
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final int maxMessagesPerAccount;
+    private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<>(256);
+    private final AtomicLongArray writeStamps = new AtomicLongArray(STRIPES);
+    private final AtomicLongArray removalStamps = new AtomicLongArray(STRIPES);
+    private final ReentrantLock[] stripeLocks = new ReentrantLock[STRIPES];
+    private final AtomicLong bytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private Iterator<Map.Entry<Integer, Entry>> hand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder encodedHits = new LongAdder();
+    private final LongAdder patches = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes Take in the {@code long} estimated bytes all cached lists may take together.
+     * @param maxMessagesPerAccount Take in the {@code int} most messages an account may have to be cached.
+     */
+    public AccountMessageCache(long maxBytes, int maxMessagesPerAccount){
+        if(maxBytes < 1 || maxMessagesPerAccount < 1){
+            throw new IllegalArgumentException("Cache budget and list size must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.maxMessagesPerAccount = maxMessagesPerAccount;
+        for(int i = 0; i < STRIPES; i++){
+            stripeLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Used to read an account's messages through the cache.
+     * @param account_id Take in the {@code int} account ID.
+     * @param loader Take in the {@code IntFunction} that reads the account's messages on a miss, in
+     * {@code message_id} order, or returns {@code null} if the read failed.
+     * @return {@code List} of the account's messages, which must not be modified, or {@code null} if the
+     * read failed.
+     */
+    public List<Message> getOrLoad(int account_id, IntFunction<List<Message>> loader){
+        Entry entry = read(account_id);
+        if(entry != null){
+            return entry.messages;
+        }
+        misses.increment();
+
+        int stripe = stripeOf(account_id);
+        long stamp = writeStamps.get(stripe);
+        List<Message> loaded = loader.apply(account_id);
+        if(loaded == null){
+            return null;
+        }
+        List<Message> messages = Collections.unmodifiableList(new ArrayList<>(loaded));
+        if(messages.size() > maxMessagesPerAccount){
+            return messages;
+        }
+        ReentrantLock lock = stripeLocks[stripe];
+        lock.lock();
+        try{
+            if(writeStamps.get(stripe) == stamp && !entries.containsKey(account_id)){
+                store(account_id, new Entry(messages, null, sizeOf(messages)));
+            }
+        } finally {
+            lock.unlock();
+        }
+        evictOverBudget();
+        return messages;
+    }
+
+    /**
+     * Used to read an account's messages through the cache as encoded JSON. The encoding of a cached list
+     * is kept with it, so it is only built once per version of the list.
+     * @param account_id Take in the {@code int} account ID.
+     * @param loader Take in the {@code IntFunction} that reads the account's messages on a miss, as for
+     * {@link #getOrLoad(int, IntFunction)}.
+     * @param encoder Take in the {@code Function} that encodes a list.
+     * @return {@code byte[]} of the encoded list, which must not be modified, or {@code null} if the read
+     * failed.
+     */
+    public byte[] getOrLoadEncoded(int account_id, IntFunction<List<Message>> loader,
+                                   Function<List<Message>, byte[]> encoder){
+        List<Message> messages;
+        Entry entry = read(account_id);
+        if(entry != null){
+            if(entry.json != null){
+                encodedHits.increment();
+                return entry.json;
+            }
+            messages = entry.messages;
+        } else {
+            messages = getOrLoad(account_id, loader);
+            if(messages == null){
+                return null;
+            }
+        }
+
+        byte[] json = encoder.apply(messages);
+        ReentrantLock lock = stripeLocks[stripeOf(account_id)];
+        lock.lock();
+        try{
+            Entry current = entries.get(account_id);
+            if(current != null && current.messages == messages && current.json == null){
+                Entry encoded = new Entry(messages, json, current.listBytes);
+                encoded.referenced = true;
+                if(entries.replace(account_id, current, encoded)){
+                    bytes.addAndGet(encoded.bytes - current.bytes);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        evictOverBudget();
+        return json;
+    }
+
+    /**
+     * Used by write paths before a message is stored, to take the stamp to hand to
+     * {@link #added(Message, long)} once it is.
+     * @param account_id Take in the {@code int} ID of the poster.
+     * @return {@code long} count of deletes and edits applied so far to accounts in the poster's stripe.
+     */
+    public long getRemovalStamp(int account_id){
+        return removalStamps.get(stripeOf(account_id));
+    }
+
+    /**
+     * Used by write paths after a message was stored, to add it to its poster's cached list. A list that
+     * already has the message was read after the insert and is left as it is, since the row it holds may
+     * be newer. If a message in the stripe was deleted or edited since {@code stamp} was taken, the list is
+     * dropped, since that may have been this message.
+     * @param message Take in the {@code Message} that was stored, with its ID.
+     * @param stamp Take in the {@code long} from {@link #getRemovalStamp(int)} taken before the insert.
+     */
+    public void added(Message message, long stamp){
+        int stripe = stripeOf(message.getPosted_by());
+        patch(message.getPosted_by(), messages -> {
+            int index = indexOf(messages, message.getMessage_id());
+            if(index >= 0){
+                return true;
+            }
+            if(removalStamps.get(stripe) != stamp){
+                return false;
+            }
+            messages.add(-index - 1, message);
+            return true;
+        });
+    }
+
+    /**
+     * Used by write paths after a message was deleted, to remove it from its poster's cached list. If the
+     * list does not have the message, the write that added it has not been applied yet, so the list is
+     * dropped rather than letting that late add bring the message back.
+     * @param message Take in the {@code Message} that was deleted.
+     */
+    public void removed(Message message){
+        removalStamps.incrementAndGet(stripeOf(message.getPosted_by()));
+        patch(message.getPosted_by(), messages -> {
+            int index = indexOf(messages, message.getMessage_id());
+            if(index < 0){
+                return false;
+            }
+            messages.remove(index);
+            return true;
+        });
+    }
+
+    /**
+     * Used by write paths that can not patch the list in order, such as edits, to drop an account's list.
+     * @param account_id Take in the {@code int} account ID.
+     */
+    public void invalidate(int account_id){
+        int stripe = stripeOf(account_id);
+        ReentrantLock lock = stripeLocks[stripe];
+        lock.lock();
+        try{
+            writeStamps.incrementAndGet(stripe);
+            removalStamps.incrementAndGet(stripe);
+            Entry entry = entries.remove(account_id);
+            if(entry != null){
+                bytes.addAndGet(-entry.bytes);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Used to drop every list, for example after the database was reset.
+     */
+    public void clear(){
+        for(int i = 0; i < STRIPES; i++){
+            writeStamps.incrementAndGet(i);
+            removalStamps.incrementAndGet(i);
+        }
+        for(Map.Entry<Integer, Entry> entry : entries.entrySet()){
+            if(entries.remove(entry.getKey(), entry.getValue())){
+                bytes.addAndGet(-entry.getValue().bytes);
+            }
+        }
+    }
+
+    /**
+     * @return {@code int} of accounts whose list is cached.
+     */
+    public int size(){
+        return entries.size();
+    }
+
+    /**
+     * @return {@code long} estimated bytes the cached lists take.
+     */
+    public long getBytes(){
+        return bytes.get();
+    }
+
+    /**
+     * @return {@code long} estimated bytes the cached lists may take.
+     */
+    public long getMaxBytes(){
+        return maxBytes;
+    }
+
+    /**
+     * @return {@code long} of reads served from a cached list.
+     */
+    public long getHitCount(){
+        return hits.sum();
+    }
+
+    /**
+     * @return {@code long} of reads that had to query the database.
+     */
+    public long getMissCount(){
+        return misses.sum();
+    }
+
+    /**
+     * @return {@code long} of reads served from a cached encoding, without encoding the list.
+     */
+    public long getEncodedHitCount(){
+        return encodedHits.sum();
+    }
+
+    /**
+     * @return {@code long} of writes applied to a cached list in place of dropping it.
+     */
+    public long getPatchCount(){
+        return patches.sum();
+    }
+
+    /**
+     * @return {@code long} of lists evicted to stay under the memory budget.
+     */
+    public long getEvictionCount(){
+        return evictions.sum();
+    }
+
+    /**
+     * Used to look up a cached list and mark it as read for the clock hand.
+     */
+    private Entry read(int account_id){
+        Entry entry = entries.get(account_id);
+        if(entry != null){
+            hits.increment();
+            if(!entry.referenced){
+                entry.referenced = true;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Used to apply a write to an account's cached list, if there is one. The write stamp is bumped
+     * either way, so a load that started before the write is not stored. A patch that adds or removes
+     * nothing keeps the cached list. The list is copied under the
+     * stripe's lock only, so reads and writes to other stripes carry on.
+     */
+    private void patch(int account_id, Patch patch){
+        int stripe = stripeOf(account_id);
+        ReentrantLock lock = stripeLocks[stripe];
+        lock.lock();
+        try{
+            writeStamps.incrementAndGet(stripe);
+            Entry entry = entries.get(account_id);
+            if(entry == null){
+                return;
+            }
+            List<Message> messages = new ArrayList<>(entry.messages.size() + 1);
+            messages.addAll(entry.messages);
+            if(!patch.apply(messages) || messages.size() > maxMessagesPerAccount){
+                if(entries.remove(account_id, entry)){
+                    bytes.addAndGet(-entry.bytes);
+                }
+                return;
+            }
+            if(messages.size() == entry.messages.size()){
+                return;
+            }
+            Entry patched = new Entry(Collections.unmodifiableList(messages), null, sizeOf(messages));
+            patched.referenced = entry.referenced;
+            if(entries.replace(account_id, entry, patched)){
+                bytes.addAndGet(patched.bytes - entry.bytes);
+                patches.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+        evictOverBudget();
+    }
+
+    /**
+     * Used to add a list. Must be called with the stripe's lock held.
+     */
+    private void store(int account_id, Entry entry){
+        if(entry.bytes > maxBytes){
+            return;
+        }
+        entries.put(account_id, entry);
+        bytes.addAndGet(entry.bytes);
+    }
+
+    /**
+     * Used to bring the cache back under budget by sweeping the clock hand. A list read since the hand
+     * last passed it gets another pass; the first one that was not is evicted.
+     */
+    private void evictOverBudget(){
+        if(bytes.get() <= maxBytes){
+            return;
+        }
+        evictionLock.lock();
+        try{
+            int sweeps = 0;
+            while(bytes.get() > maxBytes && sweeps < 3){
+                if(hand == null || !hand.hasNext()){
+                    hand = entries.entrySet().iterator();
+                    sweeps++;
+                    if(!hand.hasNext()){
+                        return;
+                    }
+                }
+                Map.Entry<Integer, Entry> candidate = hand.next();
+                Entry entry = candidate.getValue();
+                if(entry.referenced){
+                    entry.referenced = false;
+                } else if(entries.remove(candidate.getKey(), entry)){
+                    bytes.addAndGet(-entry.bytes);
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static long sizeOf(List<Message> messages){
+        long size = ENTRY_OVERHEAD_BYTES;
+        for(Message message : messages){
+            size += MESSAGE_OVERHEAD_BYTES;
+            if(message.getMessage_text() != null){
+                size += 40 + message.getMessage_text().length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return {@code int} index of the message in the list, or {@code -(insertion point) - 1} if it is not there.
+     */
+    private static int indexOf(List<Message> messages, int message_id){
+        int low = 0;
+        int high = messages.size() - 1;
+        while(low <= high){
+            int middle = (low + high) >>> 1;
+            int id = messages.get(middle).getMessage_id();
+            if(id < message_id){
+                low = middle + 1;
+            } else if(id > message_id){
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int stripeOf(int account_id){
+        return (account_id ^ (account_id >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * A change to apply to a copy of a cached list.
+     */
+    private interface Patch {
+        /**
+         * @param messages Take in the {@code List} copy to change.
+         * @return {@code true} if the copy should replace the cached list, or {@code false} to drop it. A copy
+     * left at the same size is taken as unchanged, and the cached list is kept with its encoding.
+         */
+        boolean apply(List<Message> messages);
+    }
+
+    /**
+     * A cached list, its encoding if one was built, and its estimated size. An entry is replaced rather
+     * than changed, so its size always matches what was added to the budget for it. Only the flag the
+     * clock hand reads is updated in place.
+     */
+    private static class Entry {
+        private final List<Message> messages;
+        private final byte[] json;
+        private final long listBytes;
+        private final long bytes;
+        private volatile boolean referenced = false;
+
+        private Entry(List<Message> messages, byte[] json, long listBytes){
+            this.messages = messages;
+            this.json = json;
+            this.listBytes = listBytes;
+            this.bytes = listBytes + (json != null ? json.length : 0);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package Util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * An in-process cache limited by entry count and by time to live. Reads are lock-free. When the cache is
+ * full, a clock hand sweeps the entries and evicts the first one that was not read since the hand last
+ * passed it; every read bumps a small per-entry frequency counter and every pass of the hand lowers it,
+ * so entries that are read often survive several sweeps while one-off reads are evicted first.
+ *
+ * Values loaded through {@link #getOrLoad(Object, Function)} are only stored if no write to a key in the
+ * same stripe happened while the load ran, so a slow read can not put back a value that a concurrent
+ * update or delete just replaced. The stamp is checked and the value stored in one {@code compute} on the
+ * key, and {@link #invalidate(Object)} bumps the stamp in a {@code compute} on the same key, so a write
+ * can not land between the check and the store. Write paths invalidate rather than store what they
+ * wrote, since two writers could otherwise store their values in the opposite order they committed.
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ */
+public class BoundedCache<K, V> {
+    private static final int MAX_FREQUENCY = 15;
+    private static final int STRIPES = 64;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final AtomicLongArray writeStamps = new AtomicLongArray(STRIPES);
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private Iterator<Map.Entry<K, Entry<V>>> hand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxSize Take in the {@code int} most entries to keep.
+     * @param ttlMillis Take in the {@code long} milliseconds an entry stays valid after it is stored.
+     */
+    public BoundedCache(int maxSize, long ttlMillis){
+        if(maxSize < 1 || ttlMillis < 1){
+            throw new IllegalArgumentException("Cache size and time to live must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * @param key Take in the key to look up.
+     * @return The cached value, or {@code null} if it is missing or expired.
+     */
+    public V get(K key){
+        Entry<V> entry = entries.get(key);
+        if(entry == null){
+            misses.increment();
+            return null;
+        }
+        if(System.nanoTime() - entry.storedNanos > ttlNanos){
+            if(entries.remove(key, entry)){
+                expirations.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        if(entry.frequency < MAX_FREQUENCY){
+            entry.frequency++;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Used to read through the cache. A {@code null} from the loader is returned but not cached.
+     * @param key Take in the key to look up.
+     * @param loader Take in the {@code Function} that loads the value on a miss.
+     * @return The cached or loaded value.
+     */
+    public V getOrLoad(K key, Function<K, V> loader){
+        V value = get(key);
+        if(value != null){
+            return value;
+        }
+
+        int stripe = stripeOf(key);
+        long stamp = writeStamps.get(stripe);
+        value = loader.apply(key);
+        if(value != null){
+            storeIfUnchanged(key, value, stripe, stamp);
+        }
+        return value;
+    }
+
+    /**
+     * Used to read many keys through the cache with one load for all the misses. As with
+     * {@link #getOrLoad(Object, Function)}, a loaded value is only stored if its stripe was not written
+     * while the load ran.
+     * @param keys Take in the {@code Collection} of keys to look up. Duplicates are allowed.
+     * @param loader Take in the {@code Function} that loads the missing keys, returning a {@code Map}
+     * without the keys that do not exist, or {@code null} if the load failed.
+     * @return {@code Map} of the cached and loaded values by key, or {@code null} if the load failed.
+     */
+    public Map<K, V> getAllOrLoad(Collection<K> keys, Function<Set<K>, Map<K, V>> loader){
+        Map<K, V> values = new HashMap<>();
+        Map<K, Long> missing = new LinkedHashMap<>();
+        for(K key : keys){
+            if(values.containsKey(key) || missing.containsKey(key)){
+                continue;
+            }
+            V value = get(key);
+            if(value != null){
+                values.put(key, value);
+            } else {
+                missing.put(key, writeStamps.get(stripeOf(key)));
+            }
+        }
+        if(missing.isEmpty()){
+            return values;
+        }
+
+        Map<K, V> loaded = loader.apply(missing.keySet());
+        if(loaded == null){
+            return null;
+        }
+        for(Map.Entry<K, V> entry : loaded.entrySet()){
+            K key = entry.getKey();
+            Long stamp = missing.get(key);
+            if(stamp != null && entry.getValue() != null){
+                storeIfUnchanged(key, entry.getValue(), stripeOf(key), stamp);
+            }
+            values.put(key, entry.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * Used by write paths to drop a value that is no longer valid.
+     * @param key Take in the key that was written or deleted.
+     */
+    public void invalidate(K key){
+        int stripe = stripeOf(key);
+        entries.compute(key, (k, current) -> {
+            writeStamps.incrementAndGet(stripe);
+            return null;
+        });
+    }
+
+    /**
+     * Used to drop every value, for example after the database was reset.
+     */
+    public void clear(){
+        for(int i = 0; i < STRIPES; i++){
+            writeStamps.incrementAndGet(i);
+        }
+        entries.clear();
+    }
+
+    /**
+     * @return {@code int} of entries currently cached, including expired ones not yet removed.
+     */
+    public int size(){
+        return entries.size();
+    }
+
+    /**
+     * @return {@code long} of reads that found a valid value.
+     */
+    public long getHitCount(){
+        return hits.sum();
+    }
+
+    /**
+     * @return {@code long} of reads that found nothing or an expired value.
+     */
+    public long getMissCount(){
+        return misses.sum();
+    }
+
+    /**
+     * @return {@code long} of entries evicted to stay under the size limit.
+     */
+    public long getEvictionCount(){
+        return evictions.sum();
+    }
+
+    /**
+     * @return {@code long} of entries dropped because their time to live ran out.
+     */
+    public long getExpirationCount(){
+        return expirations.sum();
+    }
+
+    /**
+     * @return {@code double} between 0 and 1 of reads that were hits, or 0 if nothing was read.
+     */
+    public double getHitRatio(){
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Used to store a loaded value unless its stripe was written after {@code stamp} was read. The check
+     * runs inside {@code compute}, which holds the key against a concurrent {@link #invalidate(Object)}.
+     */
+    private void storeIfUnchanged(K key, V value, int stripe, long stamp){
+        entries.compute(key, (k, current) ->
+            writeStamps.get(stripe) == stamp ? new Entry<>(value, System.nanoTime()) : current);
+        if(entries.size() > maxSize){
+            evict();
+        }
+    }
+
+    /**
+     * Used to bring the cache back under its size limit by sweeping the clock hand.
+     */
+    private void evict(){
+        evictionLock.lock();
+        try{
+            long now = System.nanoTime();
+            int sweeps = 0;
+            while(entries.size() > maxSize && sweeps < 2 * (MAX_FREQUENCY + 1)){
+                if(hand == null || !hand.hasNext()){
+                    hand = entries.entrySet().iterator();
+                    sweeps++;
+                    if(!hand.hasNext()){
+                        return;
+                    }
+                }
+                Map.Entry<K, Entry<V>> candidate = hand.next();
+                Entry<V> entry = candidate.getValue();
+                if(now - entry.storedNanos > ttlNanos){
+                    if(entries.remove(candidate.getKey(), entry)){
+                        expirations.increment();
+                    }
+                } else if(entry.frequency > 0){
+                    entry.frequency--;
+                } else if(entries.remove(candidate.getKey(), entry)){
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private int stripeOf(K key){
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * A cached value with the time it was stored and its read frequency. The frequency is updated without
+     * a lock, so a few concurrent reads may be lost, which only makes it an estimate.
+     */
+    private static class Entry<V> {
+        private final V value;
+        private final long storedNanos;
+        private volatile int frequency = 0;
+
+        private Entry(V value, long storedNanos){
+            this.value = value;
+            this.storedNanos = storedNanos;
+        }
+    }
+}
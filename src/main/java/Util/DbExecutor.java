@@ -0,0 +1,137 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs blocking database work off the HTTP threads. There is one thread per connection the pool can
+ * hand out, so no more work runs at once than H2 can serve, and work waiting for a thread sits in a
+ * bounded queue. When the queue is full {@link #submit(Callable)} refuses at once instead of letting
+ * the backlog and the latency grow, and the caller answers 503.
+ *
+ * The shared executor is sized from {@link ConnectionUtil}'s pool, and its queue holds
+ * {@code db.executor.queueSize} tasks. Its gauges are exported through {@link Metrics}.
+ */
+public class DbExecutor {
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyTimer queueWait = new LatencyTimer();
+
+    /**
+     * @param threads Take in the {@code int} number of threads, which should match the pool's maximum size.
+     * @param queueCapacity Take in the {@code int} number of tasks that may wait for a thread.
+     */
+    public DbExecutor(int threads, int queueCapacity){
+        this.queueCapacity = queueCapacity;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), new DbThreadFactory(), (task, pool) -> {
+                rejected.increment();
+                throw new RejectedExecutionException("Database executor queue is full");
+            });
+    }
+
+    /**
+     * @return {@code DbExecutor} shared by the whole application, created on first use.
+     */
+    public static DbExecutor getInstance(){
+        return Holder.instance;
+    }
+
+    /**
+     * Used to run a task on a database thread.
+     * @param task Take in the {@code Callable} to run.
+     * @return {@code CompletableFuture} completed with what the task returned, or with what it threw.
+     * @throws RejectedExecutionException Throws a {@code RejectedExecutionException} if the queue is full.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task){
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long queued = queueWait.start();
+        executor.execute(() -> {
+            queueWait.record(queued);
+            try{
+                future.complete(task.call());
+            } catch (Throwable e){
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return {@code int} threads currently running a task.
+     */
+    public int getActiveCount(){
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return {@code int} most threads the executor runs.
+     */
+    public int getMaxThreads(){
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * @return {@code int} tasks waiting for a thread.
+     */
+    public int getQueueDepth(){
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return {@code int} most tasks that may wait for a thread.
+     */
+    public int getQueueCapacity(){
+        return queueCapacity;
+    }
+
+    /**
+     * @return {@code long} tasks refused because the queue was full.
+     */
+    public long getRejectedCount(){
+        return rejected.sum();
+    }
+
+    /**
+     * @return {@code Histogram} of the microseconds tasks waited for a thread.
+     */
+    public Histogram getQueueWaitMicros(){
+        return queueWait.getHistogram();
+    }
+
+    /**
+     * Creates the shared executor the first time it is asked for, without a lock on the way in.
+     */
+    private static class Holder {
+        private static final DbExecutor instance = create();
+
+        private static DbExecutor create(){
+            DbExecutor executor = new DbExecutor(ConnectionUtil.getPool().getMaxSize(),
+                Integer.getInteger("db.executor.queueSize", 128));
+            Metrics.registerDbExecutor(executor);
+            return executor;
+        }
+    }
+
+    /**
+     * Names the database threads and makes them daemons, so they never keep the JVM alive.
+     */
+    private static class DbThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task){
+            Thread thread = new Thread(task, "db-executor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package Util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative {@code long} values. Values are counted into power-of-two
+ * buckets, so bucket {@code i} holds every value in {@code [2^(i-1), 2^i)} and bucket 0 holds zero.
+ * Every bucket is allocated up front, which keeps {@link #record(long)} free of locks and allocation.
+ */
+public class Histogram {
+    /**
+     * One bucket per possible bit length of a non-negative long, plus one for zero.
+     */
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public Histogram(){
+        for(int i = 0; i < BUCKETS; i++){
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param value Take in the {@code long} value to count. Negative values are counted as zero.
+     */
+    public void record(long value){
+        if(value < 0){
+            value = 0;
+        }
+        buckets[bucketOf(value)].increment();
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * @return {@code long} of how many values have been recorded.
+     */
+    public long getCount(){
+        return count.sum();
+    }
+
+    /**
+     * @return {@code long} of the sum of every recorded value.
+     */
+    public long getSum(){
+        return sum.sum();
+    }
+
+    /**
+     * @param index Take in the {@code int} bucket index.
+     * @return {@code long} of how many values fell into that bucket.
+     */
+    public long getBucketCount(int index){
+        return buckets[index].sum();
+    }
+
+    /**
+     * @return {@code int} of how many buckets this histogram has.
+     */
+    public int getBucketLength(){
+        return BUCKETS;
+    }
+
+    /**
+     * @param index Take in the {@code int} bucket index.
+     * @return {@code long} of the largest value that is counted into the bucket.
+     */
+    public static long getBucketUpperBound(int index){
+        if(index == 0){
+            return 0;
+        }
+        if(index >= 63){
+            return Long.MAX_VALUE;
+        }
+        return (1L << index) - 1;
+    }
+
+    /**
+     * Used to estimate a percentile from the buckets. The estimate is the upper bound of the bucket that
+     * holds the requested rank, so it is never lower than the true value.
+     * @param percentile Take in a {@code double} between 0 and 100.
+     * @return {@code long} estimate of the percentile, or {@code 0} if nothing was recorded.
+     */
+    public long getPercentile(double percentile){
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if(total == 0){
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * (percentile / 100.0));
+        if(rank < 1){
+            rank = 1;
+        }
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts[i];
+            if(seen >= rank){
+                return getBucketUpperBound(i);
+            }
+        }
+        return getBucketUpperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Used to clear every bucket. Values recorded while the reset is running may be lost.
+     */
+    public void reset(){
+        for(LongAdder bucket : buckets){
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+    }
+
+    private static int bucketOf(long value){
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+}
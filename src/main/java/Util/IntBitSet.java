@@ -0,0 +1,72 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A growable set of non-negative {@code int}s stored as one bit each, so a million IDs take about 128KB.
+ * {@link #contains(int)} is lock-free. {@link #add(int)} takes a lock, which keeps two adds that grow the
+ * set at the same time from losing each other's bits.
+ */
+public class IntBitSet {
+    private volatile AtomicLongArray words;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * @param expectedMax Take in the {@code int} largest value expected, used to size the set up front.
+     */
+    public IntBitSet(int expectedMax){
+        this.words = new AtomicLongArray(Math.max(1, (Math.max(0, expectedMax) >>> 6) + 1));
+    }
+
+    /**
+     * @param value Take in the {@code int} to look for.
+     * @return {@code true} if the value was added to the set.
+     */
+    public boolean contains(int value){
+        if(value < 0){
+            return false;
+        }
+        AtomicLongArray current = words;
+        int index = value >>> 6;
+        return index < current.length() && (current.get(index) & (1L << value)) != 0;
+    }
+
+    /**
+     * @param value Take in the non-negative {@code int} to add.
+     */
+    public void add(int value){
+        if(value < 0){
+            throw new IllegalArgumentException("Only non-negative values can be added: " + value);
+        }
+        int index = value >>> 6;
+        writeLock.lock();
+        try{
+            AtomicLongArray current = words;
+            if(index >= current.length()){
+                int length = Math.max(index + 1, current.length() * 2);
+                AtomicLongArray grown = new AtomicLongArray(length);
+                for(int i = 0; i < current.length(); i++){
+                    grown.set(i, current.get(i));
+                }
+                words = grown;
+                current = grown;
+            }
+            current.set(index, current.get(index) | (1L << value));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return {@code int} of values in the set.
+     */
+    public int size(){
+        AtomicLongArray current = words;
+        int count = 0;
+        for(int i = 0; i < current.length(); i++){
+            count += Long.bitCount(current.get(i));
+        }
+        return count;
+    }
+}
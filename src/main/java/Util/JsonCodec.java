@@ -0,0 +1,240 @@
+package Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import Model.Account;
+import Model.Message;
+import io.javalin.json.JsonMapper;
+
+/**
+ * The one place JSON is read and written. There is a single {@code ObjectMapper} with the Blackbird
+ * module, which generates accessors for the model classes instead of calling them through reflection,
+ * and the readers and writers for {@code Account}, {@code Message} and {@code List<Message>} are built
+ * once up front. Readers and writers for any other type are built on first use and kept.
+ *
+ * The codec is also registered as Javalin's {@code JsonMapper}, so {@code ctx.json(...)} and
+ * {@code ctx.bodyAsClass(...)} go through the same configuration.
+ */
+public class JsonCodec implements JsonMapper {
+    /**
+     * Type of a JSON array of messages.
+     */
+    public static final TypeReference<List<Message>> MESSAGE_LIST = new TypeReference<List<Message>>(){};
+
+    private static final JsonCodec instance = new JsonCodec();
+
+    private final ObjectMapper mapper;
+    private final ConcurrentHashMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Type, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    private final ObjectReader accountReader;
+    private final ObjectReader messageReader;
+    private final ObjectReader messageListReader;
+    private final ObjectWriter accountWriter;
+    private final ObjectWriter messageWriter;
+    private final ObjectWriter messageListWriter;
+
+    private JsonCodec(){
+        mapper = new ObjectMapper();
+        mapper.registerModule(new BlackbirdModule());
+        mapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        mapper.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        accountReader = readerFor(Account.class);
+        messageReader = readerFor(Message.class);
+        messageListReader = readerFor(MESSAGE_LIST.getType());
+        accountWriter = writerFor(Account.class);
+        messageWriter = writerFor(Message.class);
+        messageListWriter = writerFor(MESSAGE_LIST.getType());
+    }
+
+    /**
+     * @return {@code JsonCodec} shared by the whole application.
+     */
+    public static JsonCodec getInstance(){
+        return instance;
+    }
+
+    /**
+     * @return {@code ObjectMapper} the codec is built on, for code that needs the streaming API.
+     */
+    public ObjectMapper getMapper(){
+        return mapper;
+    }
+
+    /**
+     * @param type Take in the {@code Type} to read.
+     * @return {@code ObjectReader} for the type, built once and then reused.
+     */
+    public ObjectReader readerFor(Type type){
+        return readers.computeIfAbsent(type, key -> mapper.readerFor(javaType(key)));
+    }
+
+    /**
+     * @param type Take in the {@code Type} to write.
+     * @return {@code ObjectWriter} for the type, built once and then reused.
+     */
+    public ObjectWriter writerFor(Type type){
+        return writers.computeIfAbsent(type, key -> mapper.writerFor(javaType(key)));
+    }
+
+    /**
+     * @param json Take in the {@code String} request body.
+     * @return {@code Account} read from the body.
+     * @throws JsonProcessingException Throws an {@code JsonProcessingException} if the body is not a valid account.
+     */
+    public Account readAccount(String json) throws JsonProcessingException {
+        return accountReader.readValue(json);
+    }
+
+    /**
+     * @param json Take in the {@code String} request body.
+     * @return {@code Message} read from the body.
+     * @throws JsonProcessingException Throws an {@code JsonProcessingException} if the body is not a valid message.
+     */
+    public Message readMessage(String json) throws JsonProcessingException {
+        return messageReader.readValue(json);
+    }
+
+    /**
+     * @param json Take in the {@code String} request body.
+     * @return {@code List} of messages read from the body.
+     * @throws JsonProcessingException Throws an {@code JsonProcessingException} if the body is not a JSON array of messages.
+     */
+    public List<Message> readMessages(String json) throws JsonProcessingException {
+        return messageListReader.readValue(json);
+    }
+
+    /**
+     * Used to write an account straight to a stream, without building a {@code String} first.
+     * @param out Take in the {@code OutputStream} to write to. It is not closed.
+     * @param account Take in the {@code Account} to write.
+     * @throws IOException Throws an {@code IOException} if the stream can not be written.
+     */
+    public void writeAccount(OutputStream out, Account account) throws IOException {
+        accountWriter.writeValue(out, account);
+    }
+
+    /**
+     * Used to write a message straight to a stream, without building a {@code String} first.
+     * @param out Take in the {@code OutputStream} to write to. It is not closed.
+     * @param message Take in the {@code Message} to write.
+     * @throws IOException Throws an {@code IOException} if the stream can not be written.
+     */
+    public void writeMessage(OutputStream out, Message message) throws IOException {
+        messageWriter.writeValue(out, message);
+    }
+
+    /**
+     * Used to write a list of messages straight to a stream, without building a {@code String} first.
+     * @param out Take in the {@code OutputStream} to write to. It is not closed.
+     * @param messages Take in the {@code List} of messages to write.
+     * @throws IOException Throws an {@code IOException} if the stream can not be written.
+     */
+    public void writeMessages(OutputStream out, List<Message> messages) throws IOException {
+        messageListWriter.writeValue(out, messages);
+    }
+
+    /**
+     * Used to encode a message once, so the bytes can be cached and written to many responses.
+     * @param message Take in the {@code Message} to encode.
+     * @return {@code byte[]} of the message as UTF-8 JSON.
+     * @throws UncheckedIOException Throws an {@code UncheckedIOException} if the message can not be encoded.
+     */
+    public byte[] encodeMessage(Message message){
+        try{
+            return messageWriter.writeValueAsBytes(message);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Used to encode a list of messages once, so the bytes can be cached and written to many responses.
+     * @param messages Take in the {@code List} of messages to encode.
+     * @return {@code byte[]} of the list as a UTF-8 JSON array.
+     * @throws UncheckedIOException Throws an {@code UncheckedIOException} if the list can not be encoded.
+     */
+    public byte[] encodeMessages(List<Message> messages){
+        try{
+            return messageListWriter.writeValueAsBytes(messages);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Used to write any value straight to a stream with the writer for its type.
+     * @param out Take in the {@code OutputStream} to write to. It is not closed.
+     * @param value Take in the value to write.
+     * @param type Take in the {@code Type} to write the value as.
+     * @throws IOException Throws an {@code IOException} if the stream can not be written.
+     */
+    public void write(OutputStream out, Object value, Type type) throws IOException {
+        writerFor(type).writeValue(out, value);
+    }
+
+    @Override
+    public String toJsonString(Object obj, Type type){
+        if(obj instanceof String){
+            return (String) obj;
+        }
+        try{
+            return writerFor(type).writeValueAsString(obj);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public InputStream toJsonStream(Object obj, Type type){
+        if(obj instanceof String){
+            return new ByteArrayInputStream(((String) obj).getBytes(StandardCharsets.UTF_8));
+        }
+        try{
+            return new ByteArrayInputStream(writerFor(type).writeValueAsBytes(obj));
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonString(String json, Type targetType){
+        try{
+            return readerFor(targetType).readValue(json);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonStream(InputStream json, Type targetType){
+        try{
+            return readerFor(targetType).readValue(json);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private JavaType javaType(Type type){
+        return mapper.getTypeFactory().constructType(type);
+    }
+}
@@ -0,0 +1,32 @@
+package Util;
+
+/**
+ * Times calls into a preallocated {@link Histogram} of microseconds. Recording is lock-free and does not
+ * allocate, so a timer can sit on any hot path.
+ */
+public class LatencyTimer {
+    private final Histogram micros = new Histogram();
+
+    /**
+     * Used to start timing a call.
+     * @return {@code long} start time to hand back to {@link #record(long)}.
+     */
+    public long start(){
+        return System.nanoTime();
+    }
+
+    /**
+     * Used to record a call that started at {@code startNanos}.
+     * @param startNanos Take in the {@code long} returned by {@link #start()}.
+     */
+    public void record(long startNanos){
+        micros.record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * @return {@code Histogram} of call times in microseconds.
+     */
+    public Histogram getHistogram(){
+        return micros;
+    }
+}
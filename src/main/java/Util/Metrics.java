@@ -0,0 +1,375 @@
+package Util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The registry of every metric the application exposes, rendered in the Prometheus text format by
+ * {@link #scrape()}. Metrics are registered once, usually in a static field, and the objects handed out
+ * ({@link LatencyTimer}, {@link RouteMetrics}) record without locks or allocation. All the formatting
+ * work happens when {@code /metrics} is scraped.
+ *
+ * JVM memory, thread and garbage collection gauges are registered when the class loads.
+ */
+public class Metrics {
+    private static final String COUNTER = "counter";
+    private static final String GAUGE = "gauge";
+    private static final String HISTOGRAM = "histogram";
+
+    /**
+     * Histogram buckets are exported from 2^3-1 microseconds up to 2^25-1 microseconds (about 33
+     * seconds), plus {@code +Inf}.
+     */
+    private static final int FIRST_BUCKET = 3;
+    private static final int LAST_BUCKET = 25;
+    private static final String[] BUCKET_LABELS = new String[LAST_BUCKET + 1];
+
+    /**
+     * Histograms of plain values, such as batch sizes, are exported from 0 up to 2^12-1, plus {@code +Inf}.
+     */
+    private static final int LAST_VALUE_BUCKET = 12;
+
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+    private static final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyTimer> timers = new ConcurrentHashMap<>();
+
+    static {
+        for(int i = FIRST_BUCKET; i <= LAST_BUCKET; i++){
+            BUCKET_LABELS[i] = BigDecimal.valueOf(Histogram.getBucketUpperBound(i), 6)
+                .stripTrailingZeros().toPlainString();
+        }
+        registerJvm();
+    }
+
+    private Metrics(){
+    }
+
+    /**
+     * Used to get the counters for an HTTP route. Asking again for the same route returns the same counters.
+     * @param method Take in the {@code String} HTTP method.
+     * @param path Take in the {@code String} path pattern.
+     * @return {@code RouteMetrics} for the route.
+     */
+    public static RouteMetrics route(String method, String path){
+        return routes.computeIfAbsent(method + ' ' + path, key -> {
+            RouteMetrics route = new RouteMetrics(method, path);
+            String labels = labels("method", method, "route", path);
+            family("http_requests_total", "HTTP requests handled, by route and status code.", COUNTER)
+                .series.put(labels, (out, name) -> {
+                    for(int status = 0; status < RouteMetrics.getMaxStatus(); status++){
+                        long count = route.getStatusCount(status);
+                        if(count > 0){
+                            writeSample(out, name, labels + ",status=\"" + status + '"', count);
+                        }
+                    }
+                });
+            family("http_requests_in_flight", "HTTP requests currently being handled.", GAUGE)
+                .series.put(labels, (out, name) -> writeSample(out, name, labels, route.getInFlight()));
+            family("http_request_duration_seconds", "Time to handle an HTTP request.", HISTOGRAM)
+                .series.put(labels, (out, name) -> writeHistogram(out, name, labels, route.getLatencyMicros()));
+            return route;
+        });
+    }
+
+    /**
+     * Used to get the timer for one DAO method. Asking again for the same method returns the same timer.
+     * @param dao Take in the {@code String} DAO class name.
+     * @param method Take in the {@code String} method name.
+     * @return {@code LatencyTimer} for the method.
+     */
+    public static LatencyTimer daoTimer(String dao, String method){
+        return timers.computeIfAbsent(dao + '.' + method, key -> {
+            LatencyTimer timer = new LatencyTimer();
+            histogram("dao_call_duration_seconds", "Time spent in a DAO method, including waiting for a connection.",
+                labels("dao", dao, "method", method), timer.getHistogram());
+            return timer;
+        });
+    }
+
+    /**
+     * Used to export a {@code Histogram} of microseconds as a Prometheus histogram in seconds.
+     * @param name Take in the {@code String} metric name.
+     * @param help Take in the {@code String} description.
+     * @param labels Take in the {@code String} labels made with {@link #labels(String...)}.
+     * @param micros Take in the {@code Histogram} to export.
+     */
+    public static void histogram(String name, String help, String labels, Histogram micros){
+        family(name, help, HISTOGRAM).series.put(labels, (out, family) -> writeHistogram(out, family, labels, micros));
+    }
+
+    /**
+     * Used to export a {@code Histogram} of plain values, such as batch sizes, as a Prometheus histogram of
+     * the same values.
+     * @param name Take in the {@code String} metric name.
+     * @param help Take in the {@code String} description.
+     * @param labels Take in the {@code String} labels made with {@link #labels(String...)}.
+     * @param values Take in the {@code Histogram} to export.
+     */
+    public static void valueHistogram(String name, String help, String labels, Histogram values){
+        family(name, help, HISTOGRAM).series.put(labels, (out, family) -> writeValueHistogram(out, family, labels, values));
+    }
+
+    /**
+     * Used to export a value that can go up and down.
+     * @param name Take in the {@code String} metric name.
+     * @param help Take in the {@code String} description.
+     * @param labels Take in the {@code String} labels made with {@link #labels(String...)}.
+     * @param value Take in the {@code DoubleSupplier} read on every scrape.
+     */
+    public static void gauge(String name, String help, String labels, DoubleSupplier value){
+        family(name, help, GAUGE).series.put(labels, (out, family) -> writeSample(out, family, labels, value.getAsDouble()));
+    }
+
+    /**
+     * Used to export a value that only goes up.
+     * @param name Take in the {@code String} metric name, ending in {@code _total}.
+     * @param help Take in the {@code String} description.
+     * @param labels Take in the {@code String} labels made with {@link #labels(String...)}.
+     * @param value Take in the {@code DoubleSupplier} read on every scrape.
+     */
+    public static void counter(String name, String help, String labels, DoubleSupplier value){
+        family(name, help, COUNTER).series.put(labels, (out, family) -> writeSample(out, family, labels, value.getAsDouble()));
+    }
+
+    /**
+     * Used to export the gauges and counters of a connection pool.
+     * @param pool Take in the {@code ConnectionPool} to export.
+     */
+    public static void registerPool(ConnectionPool pool){
+        gauge("db_pool_connections_active", "Connections currently borrowed.", "", pool::getActiveCount);
+        gauge("db_pool_connections_idle", "Open connections waiting in the pool.", "", pool::getIdleCount);
+        gauge("db_pool_connections_total", "Open connections, borrowed or idle.", "", pool::getTotalCount);
+        gauge("db_pool_connections_max", "Most connections the pool will open.", "", pool::getMaxSize);
+        gauge("db_pool_waiting_threads", "Callers waiting for a connection.", "", pool::getWaitingCount);
+        counter("db_pool_leaks_total", "Connections held past the leak threshold.", "", pool::getLeakCount);
+        counter("db_pool_reclaimed_total", "Leaked connections the pool took back.", "", pool::getReclaimedCount);
+        counter("db_statement_cache_hits_total", "Prepared statements served from a statement cache.", "",
+            pool::getStatementCacheHits);
+        counter("db_statement_cache_misses_total", "Prepared statements the database had to parse.", "",
+            pool::getStatementCacheMisses);
+        counter("db_statement_cache_evictions_total", "Cached statements closed to make room.", "",
+            pool::getStatementCacheEvictions);
+        histogram("db_pool_acquire_duration_seconds", "Time spent waiting for a connection.", "",
+            pool.getAcquireLatencyMicros());
+    }
+
+    /**
+     * Used to export the gauges and counters of the executor that runs database work.
+     * @param executor Take in the {@code DbExecutor} to export.
+     */
+    public static void registerDbExecutor(DbExecutor executor){
+        gauge("db_executor_threads_active", "Database threads running a task.", "", executor::getActiveCount);
+        gauge("db_executor_threads_max", "Most database threads.", "", executor::getMaxThreads);
+        gauge("db_executor_queue_depth", "Tasks waiting for a database thread.", "", executor::getQueueDepth);
+        gauge("db_executor_queue_capacity", "Most tasks that may wait for a database thread.", "",
+            executor::getQueueCapacity);
+        counter("db_executor_rejected_total", "Tasks refused because the queue was full.", "",
+            executor::getRejectedCount);
+        histogram("db_executor_queue_wait_seconds", "Time a task waited for a database thread.", "",
+            executor.getQueueWaitMicros());
+    }
+
+    /**
+     * Used to export the gauges and counters of a {@link BoundedCache}.
+     * @param cache Take in the {@code String} name of the cache.
+     * @param bounded Take in the {@code BoundedCache} to export.
+     */
+    public static void registerCache(String cache, BoundedCache<?, ?> bounded){
+        String labels = labels("cache", cache);
+        gauge("cache_entries", "Entries currently cached.", labels, bounded::size);
+        counter("cache_hits_total", "Reads that found a valid value.", labels, bounded::getHitCount);
+        counter("cache_misses_total", "Reads that found nothing or an expired value.", labels, bounded::getMissCount);
+        counter("cache_evictions_total", "Entries evicted to stay under the size limit.", labels,
+            bounded::getEvictionCount);
+        counter("cache_expirations_total", "Entries dropped because their time to live ran out.", labels,
+            bounded::getExpirationCount);
+    }
+
+    /**
+     * Used to export the gauges and counters of the per-account message cache.
+     * @param cache Take in the {@code AccountMessageCache} to export.
+     */
+    public static void registerAccountMessageCache(AccountMessageCache cache){
+        gauge("account_message_cache_accounts", "Accounts whose messages are cached.", "", cache::size);
+        gauge("account_message_cache_bytes", "Estimated bytes the cached messages take.", "", cache::getBytes);
+        gauge("account_message_cache_max_bytes", "Estimated bytes the cached messages may take.", "",
+            cache::getMaxBytes);
+        counter("account_message_cache_hits_total", "Account message reads served from the cache.", "",
+            cache::getHitCount);
+        counter("account_message_cache_misses_total", "Account message reads that queried the database.", "",
+            cache::getMissCount);
+        counter("account_message_cache_encoded_hits_total", "Account message reads written from a cached encoding.",
+            "", cache::getEncodedHitCount);
+        counter("account_message_cache_patches_total", "New or deleted messages applied to a cached list.", "",
+            cache::getPatchCount);
+        counter("account_message_cache_evictions_total", "Lists evicted to stay under the memory budget.", "",
+            cache::getEvictionCount);
+    }
+
+    /**
+     * Used to export the counters of a {@link SingleFlight}.
+     * @param load Take in the {@code String} name of what the single-flight loads.
+     * @param flight Take in the {@code SingleFlight} to export.
+     */
+    public static void registerSingleFlight(String load, SingleFlight<?, ?> flight){
+        String labels = labels("load", load);
+        counter("singleflight_loads_total", "Loads that ran against the database.", labels, flight::getLoadCount);
+        counter("singleflight_coalesced_total", "Calls that shared a load already in flight for the same key.",
+            labels, flight::getCoalescedCount);
+    }
+
+    /**
+     * Used to build a label set.
+     * @param pairs Take in label names and values, alternating.
+     * @return {@code String} of the labels in the Prometheus format, without braces.
+     */
+    public static String labels(String... pairs){
+        StringBuilder labels = new StringBuilder();
+        for(int i = 0; i + 1 < pairs.length; i += 2){
+            if(labels.length() > 0){
+                labels.append(',');
+            }
+            labels.append(pairs[i]).append("=\"");
+            String value = pairs[i + 1];
+            for(int j = 0; j < value.length(); j++){
+                char c = value.charAt(j);
+                if(c == '\\' || c == '"'){
+                    labels.append('\\').append(c);
+                } else if(c == '\n'){
+                    labels.append("\\n");
+                } else {
+                    labels.append(c);
+                }
+            }
+            labels.append('"');
+        }
+        return labels.toString();
+    }
+
+    /**
+     * @return {@code String} of every metric in the Prometheus text format, version 0.0.4.
+     */
+    public static String scrape(){
+        StringBuilder out = new StringBuilder(16384);
+        for(Family family : families.values()){
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for(Series series : family.series.values()){
+                series.write(out, family.name);
+            }
+        }
+        return out.toString();
+    }
+
+    private static Family family(String name, String help, String type){
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        if(!family.type.equals(type)){
+            throw new IllegalArgumentException("Metric " + name + " is already a " + family.type);
+        }
+        return family;
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, double value){
+        out.append(name);
+        if(!labels.isEmpty()){
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if(value == Math.rint(value) && !Double.isInfinite(value)){
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, Histogram micros){
+        String prefix = labels.isEmpty() ? "" : labels + ',';
+        long cumulative = 0;
+        for(int i = 0; i < micros.getBucketLength(); i++){
+            cumulative += micros.getBucketCount(i);
+            if(i >= FIRST_BUCKET && i <= LAST_BUCKET){
+                writeSample(out, name + "_bucket", prefix + "le=\"" + BUCKET_LABELS[i] + '"', cumulative);
+            }
+        }
+        writeSample(out, name + "_bucket", prefix + "le=\"+Inf\"", cumulative);
+        writeSample(out, name + "_sum", labels, micros.getSum() / 1e6);
+        writeSample(out, name + "_count", labels, cumulative);
+    }
+
+    private static void writeValueHistogram(StringBuilder out, String name, String labels, Histogram values){
+        String prefix = labels.isEmpty() ? "" : labels + ',';
+        long cumulative = 0;
+        for(int i = 0; i < values.getBucketLength(); i++){
+            cumulative += values.getBucketCount(i);
+            if(i <= LAST_VALUE_BUCKET){
+                writeSample(out, name + "_bucket", prefix + "le=\"" + Histogram.getBucketUpperBound(i) + '"', cumulative);
+            }
+        }
+        writeSample(out, name + "_bucket", prefix + "le=\"+Inf\"", cumulative);
+        writeSample(out, name + "_sum", labels, values.getSum());
+        writeSample(out, name + "_count", labels, cumulative);
+    }
+
+    private static void registerJvm(){
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        gauge("jvm_memory_bytes_used", "Memory used by the JVM.", labels("area", "heap"),
+            () -> memory.getHeapMemoryUsage().getUsed());
+        gauge("jvm_memory_bytes_used", "Memory used by the JVM.", labels("area", "nonheap"),
+            () -> memory.getNonHeapMemoryUsage().getUsed());
+        gauge("jvm_memory_bytes_committed", "Memory committed by the JVM.", labels("area", "heap"),
+            () -> memory.getHeapMemoryUsage().getCommitted());
+        gauge("jvm_memory_bytes_committed", "Memory committed by the JVM.", labels("area", "nonheap"),
+            () -> memory.getNonHeapMemoryUsage().getCommitted());
+        gauge("jvm_memory_bytes_max", "Most heap the JVM will use.", labels("area", "heap"),
+            () -> memory.getHeapMemoryUsage().getMax());
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        gauge("jvm_threads_current", "Live threads.", "", threads::getThreadCount);
+        gauge("jvm_threads_daemon", "Live daemon threads.", "", threads::getDaemonThreadCount);
+        gauge("jvm_threads_peak", "Most live threads since the JVM started.", "", threads::getPeakThreadCount);
+
+        for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()){
+            String labels = labels("gc", collector.getName());
+            counter("jvm_gc_collections_total", "Garbage collections run.", labels, collector::getCollectionCount);
+            counter("jvm_gc_collection_seconds_total", "Time spent in garbage collection.", labels,
+                () -> collector.getCollectionTime() / 1e3);
+        }
+
+        gauge("jvm_available_processors", "Processors available to the JVM.", "",
+            () -> Runtime.getRuntime().availableProcessors());
+        gauge("process_uptime_seconds", "Seconds since the JVM started.", "",
+            () -> ManagementFactory.getRuntimeMXBean().getUptime() / 1e3);
+    }
+
+    /**
+     * Writes one series of a family on every scrape.
+     */
+    private interface Series {
+        void write(StringBuilder out, String name);
+    }
+
+    /**
+     * Every series that shares a metric name, so the family's {@code HELP} and {@code TYPE} lines are
+     * written once.
+     */
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final Map<String, Series> series = new ConcurrentSkipListMap<>();
+
+        private Family(String name, String help, String type){
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Queues work items from many threads and hands them to one handler together, so items that arrive within
+ * a few milliseconds of each other share one statement. A single worker thread takes the first queued item,
+ * waits up to {@code windowMicros} for more, or until {@code maxBatchSize} are queued, and passes them all
+ * to the handler, which returns one result per item in the same order. Each caller blocks until the batch
+ * holding its item is done.
+ *
+ * If the handler throws, anything at all, every caller in that batch gets the exception and the worker
+ * goes on with the next batch, so a failed batch never leaves callers waiting forever.
+ *
+ * @param <T> Type of the queued items.
+ * @param <R> Type of the result each caller gets back.
+ */
+public class MicroBatcher<T, R> {
+    private final Function<List<T>, List<R>> handler;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final BlockingQueue<Pending<T, R>> queue = new LinkedBlockingQueue<>();
+    private final Histogram batchSizes = new Histogram();
+    private final Thread worker;
+
+    /**
+     * @param name Take in the {@code String} name of the worker thread.
+     * @param maxBatchSize Take in the {@code int} most items to hand to the handler together.
+     * @param windowMicros Take in the {@code long} microseconds to wait for more items after the first.
+     * @param handler Take in the {@code Function} that runs one batch, returning a {@code List} with one
+     * result per item in the same order.
+     */
+    public MicroBatcher(String name, int maxBatchSize, long windowMicros, Function<List<T>, List<R>> handler){
+        if(maxBatchSize < 1 || windowMicros < 0){
+            throw new IllegalArgumentException("Invalid batch " + maxBatchSize + " / " + windowMicros + "us");
+        }
+        this.handler = handler;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Used to run an item as part of the next batch. Blocks until the batch is done.
+     * @param item Take in the item to queue.
+     * @return The item's result from the handler.
+     */
+    public R submit(T item){
+        Pending<T, R> pending = new Pending<>(item);
+        queue.add(pending);
+        try{
+            return pending.result.join();
+        } catch (CompletionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return {@code Histogram} of how many items were handled together.
+     */
+    public Histogram getBatchSizes(){
+        return batchSizes;
+    }
+
+    private void run(){
+        List<Pending<T, R>> batch = new ArrayList<>(maxBatchSize);
+        while(true){
+            try{
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while(batch.size() < maxBatchSize){
+                    long remaining = deadline - System.nanoTime();
+                    Pending<T, R> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if(next == null){
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try{
+                List<T> items = new ArrayList<>(batch.size());
+                for(Pending<T, R> pending : batch){
+                    items.add(pending.item);
+                }
+                batchSizes.record(batch.size());
+                List<R> results = handler.apply(items);
+                if(results == null || results.size() != batch.size()){
+                    throw new IllegalStateException("Batch of " + batch.size() + " items got "
+                        + (results == null ? "no" : String.valueOf(results.size())) + " results");
+                }
+                for(int i = 0; i < batch.size(); i++){
+                    batch.get(i).result.complete(results.get(i));
+                }
+            } catch (Throwable e){
+                e.printStackTrace();
+                for(Pending<T, R> pending : batch){
+                    pending.result.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * One caller's item, and the result it is waiting for.
+     */
+    private static class Pending<T, R> {
+        private final T item;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+
+        private Pending(T item){
+            this.item = item;
+        }
+    }
+}
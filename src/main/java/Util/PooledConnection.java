@@ -0,0 +1,220 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A physical connection owned by a {@link ConnectionPool}. Each time it is borrowed the pool hands out a
+ * new {@link Lease}, so closing the lease's proxy returns the physical connection to the pool instead of
+ * closing it, and a proxy that was already closed can not touch the connection again after someone else
+ * borrowed it.
+ *
+ * When the pool has a {@link SqlProfiler}, every statement the lease hands out is wrapped so its
+ * execution is timed.
+ */
+class PooledConnection {
+    private final ConnectionPool pool;
+    private final Connection physical;
+    private final StatementCache statementCache;
+    private volatile long lastReturnedNanos;
+
+    /**
+     * @param pool Take in the {@code ConnectionPool} that owns the connection.
+     * @param physical Take in the {@code Connection} that the database driver created.
+     * @param statementCache Take in the {@code StatementCache} for this connection, or {@code null} to
+     * prepare every statement again.
+     */
+    PooledConnection(ConnectionPool pool, Connection physical, StatementCache statementCache){
+        this.pool = pool;
+        this.physical = physical;
+        this.statementCache = statementCache;
+        this.lastReturnedNanos = System.nanoTime();
+    }
+
+    /**
+     * @return {@code Connection} that the database driver created.
+     */
+    Connection getPhysical(){
+        return physical;
+    }
+
+    /**
+     * @return {@code long} of the {@link System#nanoTime()} when this connection was last given back.
+     */
+    long getLastReturnedNanos(){
+        return lastReturnedNanos;
+    }
+
+    /**
+     * @param captureStack Take in {@code true} to record the stack of the borrowing thread. Only the
+     * {@code Throwable} is created here; its stack is turned into {@code StackTraceElement}s if the lease
+     * is reported as a leak.
+     * @return A new {@code Lease} for one borrow of this connection.
+     */
+    Lease borrow(boolean captureStack){
+        return new Lease(captureStack ? new Throwable() : null);
+    }
+
+    /**
+     * Used to put the connection back into the state a new borrower expects.
+     * @throws SQLException Throws an {@code SQLException} if the connection can not be reset.
+     */
+    void reset() throws SQLException {
+        if(statementCache != null){
+            statementCache.checkInAll();
+        }
+        if(!physical.getAutoCommit()){
+            physical.rollback();
+            physical.setAutoCommit(true);
+        }
+        physical.clearWarnings();
+        lastReturnedNanos = System.nanoTime();
+    }
+
+    /**
+     * Used to close the physical connection when the pool discards it.
+     */
+    void closePhysical(){
+        if(statementCache != null){
+            statementCache.clear();
+        }
+        try{
+            physical.close();
+        } catch (SQLException e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A single borrow of the connection. The lease hands out the {@link Connection} proxy, and records who
+     * borrowed it and when, so the pool can find connections that were never given back. Once closed every
+     * call other than {@code close} and {@code isClosed} fails, just like a real closed connection.
+     */
+    class Lease implements InvocationHandler {
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final long borrowedNanos = System.nanoTime();
+        private final String threadName = Thread.currentThread().getName();
+        private final Throwable borrowSite;
+        private final Connection proxy;
+        private volatile boolean reported = false;
+
+        private Lease(Throwable borrowSite){
+            this.borrowSite = borrowSite;
+            this.proxy = (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                this
+            );
+        }
+
+        /**
+         * @return {@code Connection} proxy given to the borrower.
+         */
+        Connection getProxy(){
+            return proxy;
+        }
+
+        /**
+         * @return {@code PooledConnection} this lease borrows.
+         */
+        PooledConnection getConnection(){
+            return PooledConnection.this;
+        }
+
+        /**
+         * @return {@code long} of the {@link System#nanoTime()} when the connection was borrowed.
+         */
+        long getBorrowedNanos(){
+            return borrowedNanos;
+        }
+
+        /**
+         * @return {@code String} name of the thread that borrowed the connection.
+         */
+        String getThreadName(){
+            return threadName;
+        }
+
+        /**
+         * @return {@code StackTraceElement} array of where the connection was borrowed, or {@code null}
+         * if the stack was not captured.
+         */
+        StackTraceElement[] getStack(){
+            return borrowSite != null ? borrowSite.getStackTrace() : null;
+        }
+
+        /**
+         * Used to mark the lease as reported so a leak is only counted once.
+         * @return {@code true} the first time this is called for the lease.
+         */
+        boolean markReported(){
+            if(reported){
+                return false;
+            }
+            reported = true;
+            return true;
+        }
+
+        /**
+         * Used to end the lease.
+         * @return {@code true} if this call closed the lease, or {@code false} if it was already closed.
+         */
+        boolean close(){
+            return closed.compareAndSet(false, true);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch(name){
+                case "close":
+                    if(close()){
+                        pool.release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed.get();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + physical.toString();
+                default:
+                    break;
+            }
+
+            if(closed.get()){
+                throw new SQLException("Connection is closed");
+            }
+            Object result = null;
+            if(statementCache != null && name.equals("prepareStatement")){
+                Class<?>[] types = method.getParameterTypes();
+                if(types.length == 1){
+                    result = statementCache.prepare(physical, this.proxy, (String) args[0], Statement.NO_GENERATED_KEYS);
+                } else if(types.length == 2 && types[1] == int.class){
+                    result = statementCache.prepare(physical, this.proxy, (String) args[0], (Integer) args[1]);
+                }
+            }
+            if(result == null){
+                try{
+                    result = method.invoke(physical, args);
+                } catch (InvocationTargetException e){
+                    throw e.getCause();
+                }
+            }
+
+            SqlProfiler profiler = pool.getProfiler();
+            if(profiler != null && (name.equals("prepareStatement") || name.equals("createStatement"))){
+                return profiler.wrap((Statement) result, name.equals("prepareStatement") ? (String) args[0] : null, physical);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A statement handed out by a pooled connection while a {@link SqlProfiler} is enabled. Every
+ * {@code execute} call is timed and reported to the profiler, and the type of each bind parameter is
+ * remembered so a slow statement can be logged with its parameter shapes. Values are only kept when the
+ * profiler captures {@code EXPLAIN} plans, since the plan has to be read with the same values.
+ */
+class ProfiledStatement implements InvocationHandler {
+    private static final int INITIAL_PARAMETERS = 8;
+
+    private final SqlProfiler profiler;
+    private final Statement statement;
+    private final String sql;
+    private final Connection physical;
+    private final boolean keepValues;
+
+    private String[] types = new String[INITIAL_PARAMETERS];
+    private int[] lengths = new int[INITIAL_PARAMETERS];
+    private Object[] values;
+    private int parameterCount = 0;
+
+    private ProfiledStatement(SqlProfiler profiler, Statement statement, String sql, Connection physical,
+                              boolean keepValues){
+        this.profiler = profiler;
+        this.statement = statement;
+        this.sql = sql;
+        this.physical = physical;
+        this.keepValues = keepValues;
+        this.values = keepValues ? new Object[INITIAL_PARAMETERS] : null;
+    }
+
+    /**
+     * @param profiler Take in the {@code SqlProfiler} to report to.
+     * @param statement Take in the {@code Statement} to profile.
+     * @param sql Take in the {@code String} SQL it was prepared with, or {@code null} for a plain statement.
+     * @param physical Take in the physical {@code Connection}, used to run {@code EXPLAIN}.
+     * @param keepValues Take in {@code true} to keep bind values for {@code EXPLAIN}.
+     * @return {@code Statement} proxy, a {@code PreparedStatement} if the statement is one.
+     */
+    static Statement wrap(SqlProfiler profiler, Statement statement, String sql, Connection physical, boolean keepValues){
+        Class<?> type = statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(
+            type.getClassLoader(),
+            new Class<?>[] { type },
+            new ProfiledStatement(profiler, statement, sql, physical, keepValues)
+        );
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if(name.startsWith("execute")){
+            String executed = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            return execute(method, args, executed);
+        }
+        if(name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer){
+            bind((Integer) args[0], name, args[1]);
+        } else if(name.equals("clearParameters")){
+            parameterCount = 0;
+        }
+        switch(name){
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Profiled" + statement.toString();
+            default:
+                break;
+        }
+        try{
+            return method.invoke(statement, args);
+        } catch (InvocationTargetException e){
+            throw e.getCause();
+        }
+    }
+
+    private Object execute(Method method, Object[] args, String executed) throws Throwable {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try{
+            Object result = method.invoke(statement, args);
+            failed = false;
+            return result;
+        } catch (InvocationTargetException e){
+            throw e.getCause();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            if(executed != null && profiler.record(executed, elapsed, failed)){
+                String plan = keepValues && !failed && isSelect(executed)
+                    ? SqlProfiler.explain(physical, executed, Arrays.copyOf(values, parameterCount + 1))
+                    : null;
+                profiler.slow(executed, elapsed, parameterShapes(), plan);
+            }
+        }
+    }
+
+    /**
+     * Used to remember the shape of a bind parameter. Only a type name and a length are stored, and the
+     * type names are constants, so binding does not allocate once the arrays are big enough.
+     */
+    private void bind(int index, String setter, Object value){
+        if(index < 1){
+            return;
+        }
+        if(index >= types.length){
+            int size = Math.max(types.length * 2, index + 1);
+            types = Arrays.copyOf(types, size);
+            lengths = Arrays.copyOf(lengths, size);
+            if(keepValues){
+                values = Arrays.copyOf(values, size);
+            }
+        }
+        types[index] = typeOf(setter, value);
+        lengths[index] = value instanceof String ? ((String) value).length() : -1;
+        if(keepValues){
+            values[index] = setter.equals("setNull") ? null : value;
+        }
+        parameterCount = Math.max(parameterCount, index);
+    }
+
+    private List<String> parameterShapes(){
+        List<String> shapes = new ArrayList<>(parameterCount);
+        for(int i = 1; i <= parameterCount; i++){
+            String type = types[i] == null ? "UNSET" : types[i];
+            shapes.add(lengths[i] >= 0 ? type + '(' + lengths[i] + ')' : type);
+        }
+        return shapes;
+    }
+
+    private static String typeOf(String setter, Object value){
+        switch(setter){
+            case "setInt":
+                return "INT";
+            case "setLong":
+                return "BIGINT";
+            case "setString":
+                return "VARCHAR";
+            case "setBoolean":
+                return "BOOLEAN";
+            case "setNull":
+                return "NULL";
+            case "setObject":
+                return value == null ? "NULL" : value.getClass().getSimpleName();
+            default:
+                return setter.substring(3).toUpperCase();
+        }
+    }
+
+    private static boolean isSelect(String sql){
+        return sql.regionMatches(true, 0, "SELECT", 0, 6) || sql.regionMatches(true, 0, "WITH", 0, 4);
+    }
+}
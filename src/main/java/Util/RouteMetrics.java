@@ -0,0 +1,108 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counters for one HTTP route: requests in flight, a count per status code, and a latency
+ * histogram. Every counter is striped, and the counter for a status code is created the first time that
+ * code is seen, so after warmup {@link #begin()} and {@link #end(long, int)} take no lock and allocate
+ * nothing.
+ */
+public class RouteMetrics {
+    private static final int MAX_STATUS = 600;
+
+    private final String method;
+    private final String path;
+    private final LongAdder inFlight = new LongAdder();
+    private final AtomicReferenceArray<LongAdder> statusCounts = new AtomicReferenceArray<>(MAX_STATUS);
+    private final LatencyTimer latency = new LatencyTimer();
+
+    /**
+     * @param method Take in the {@code String} HTTP method of the route.
+     * @param path Take in the {@code String} path pattern of the route, such as {@code /messages/{message_id}}.
+     */
+    RouteMetrics(String method, String path){
+        this.method = method;
+        this.path = path;
+    }
+
+    /**
+     * Used when a request for the route starts.
+     * @return {@code long} start time to hand back to {@link #end(long, int)}.
+     */
+    public long begin(){
+        inFlight.increment();
+        return latency.start();
+    }
+
+    /**
+     * Used when a request for the route has its response.
+     * @param startNanos Take in the {@code long} returned by {@link #begin()}.
+     * @param status Take in the {@code int} HTTP status code of the response.
+     */
+    public void end(long startNanos, int status){
+        latency.record(startNanos);
+        inFlight.decrement();
+        statusCounter(status).increment();
+    }
+
+    /**
+     * @return {@code String} HTTP method of the route.
+     */
+    public String getMethod(){
+        return method;
+    }
+
+    /**
+     * @return {@code String} path pattern of the route.
+     */
+    public String getPath(){
+        return path;
+    }
+
+    /**
+     * @return {@code long} of requests currently being handled.
+     */
+    public long getInFlight(){
+        return inFlight.sum();
+    }
+
+    /**
+     * @param status Take in the {@code int} HTTP status code.
+     * @return {@code long} of responses sent with that status code.
+     */
+    public long getStatusCount(int status){
+        if(status < 0 || status >= MAX_STATUS){
+            return 0;
+        }
+        LongAdder counter = statusCounts.get(status);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * @return {@code int} one more than the highest status code that is counted.
+     */
+    public static int getMaxStatus(){
+        return MAX_STATUS;
+    }
+
+    /**
+     * @return {@code Histogram} of request times in microseconds.
+     */
+    public Histogram getLatencyMicros(){
+        return latency.getHistogram();
+    }
+
+    private LongAdder statusCounter(int status){
+        if(status < 0 || status >= MAX_STATUS){
+            status = 0;
+        }
+        LongAdder counter = statusCounts.get(status);
+        if(counter == null){
+            statusCounts.compareAndSet(status, null, new LongAdder());
+            counter = statusCounts.get(status);
+        }
+        return counter;
+    }
+}
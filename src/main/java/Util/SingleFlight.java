@@ -0,0 +1,99 @@
+package Util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Lets concurrent callers asking for the same key share one load. The first caller runs the loader;
+ * everyone who asks for the key while that load is running waits for it and gets the same result, or
+ * the same exception. Nothing is kept once the load finishes, so a caller never gets a value that was
+ * loaded before it asked, unless the load was already running when it asked.
+ *
+ * Write paths call {@link #forget(Object)} so callers that arrive after a write start a new load
+ * instead of joining one that may have read the old row.
+ *
+ * The shared result is handed to every waiter as is, so it must not be modified.
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Used to load a value, or to wait for the load of the same key that is already running.
+     * @param key Take in the key to load.
+     * @param loader Take in the {@code Function} that loads the value.
+     * @return The loaded value, which may be {@code null}.
+     */
+    public V load(K key, Function<K, V> loader){
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+        if(running != null){
+            coalesced.increment();
+            return await(running);
+        }
+
+        loads.increment();
+        try{
+            V value = loader.apply(key);
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e){
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Used by write paths so the next caller for the key starts a new load. Callers already waiting
+     * keep waiting for the load they joined.
+     * @param key Take in the key that was written.
+     */
+    public void forget(K key){
+        inFlight.remove(key);
+    }
+
+    /**
+     * Used to forget every running load, for example after the database was reset.
+     */
+    public void clear(){
+        inFlight.clear();
+    }
+
+    /**
+     * @return {@code long} of loads that ran the loader.
+     */
+    public long getLoadCount(){
+        return loads.sum();
+    }
+
+    /**
+     * @return {@code long} of calls that waited for another caller's load instead of running their own.
+     */
+    public long getCoalescedCount(){
+        return coalesced.sum();
+    }
+
+    private V await(CompletableFuture<V> running){
+        try{
+            return running.join();
+        } catch (CompletionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
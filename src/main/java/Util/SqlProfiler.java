@@ -0,0 +1,368 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times every statement run on a pooled connection and adds it up by normalized SQL, where literals are
+ * replaced with {@code ?} and whitespace is collapsed, so the same query with different values counts
+ * as one. A statement slower than the threshold is printed to standard error with the types and lengths
+ * of its bind parameters, never their values, and is kept in a short list of recent slow queries.
+ * With {@code explainSlow} the H2 {@code EXPLAIN} plan of a slow {@code SELECT} is captured as well.
+ */
+public class SqlProfiler {
+    /**
+     * How many recent slow queries are kept.
+     */
+    private static final int SLOW_QUERY_HISTORY = 50;
+
+    /**
+     * Distinct SQL texts whose normalized form is remembered, so statements built with literals can not
+     * grow the map without bound.
+     */
+    private static final int MAX_NORMALIZED = 1000;
+
+    private final long slowThresholdNanos;
+    private final boolean explainSlow;
+    private final ConcurrentHashMap<String, String> normalized = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedDeque<SlowQuery> slowQueries = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger slowQueryCount = new AtomicInteger();
+
+    /**
+     * @param slowThresholdMillis Take in the {@code long} milliseconds over which a statement is logged
+     * as slow.
+     * @param explainSlow Take in {@code true} to capture the {@code EXPLAIN} plan of slow queries.
+     */
+    public SqlProfiler(long slowThresholdMillis, boolean explainSlow){
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.explainSlow = explainSlow;
+    }
+
+    /**
+     * Used by {@link PooledConnection} to profile a statement it hands out.
+     * @param statement Take in the {@code Statement} to profile.
+     * @param sql Take in the {@code String} SQL it was prepared with, or {@code null} for a plain statement.
+     * @param physical Take in the physical {@code Connection}, used to run {@code EXPLAIN}.
+     * @return {@code Statement} proxy that implements the same interface as the statement.
+     */
+    Statement wrap(Statement statement, String sql, Connection physical){
+        return ProfiledStatement.wrap(this, statement, sql, physical, explainSlow);
+    }
+
+    /**
+     * Used by {@link ProfiledStatement} after a statement ran.
+     * @param sql Take in the {@code String} SQL that ran.
+     * @param nanos Take in the {@code long} nanoseconds it took.
+     * @param failed Take in {@code true} if it threw.
+     * @return {@code true} if the statement was slower than the threshold.
+     */
+    boolean record(String sql, long nanos, boolean failed){
+        Stats entry = stats.computeIfAbsent(normalize(sql), Stats::new);
+        entry.record(nanos / 1000, failed);
+        return nanos >= slowThresholdNanos;
+    }
+
+    /**
+     * Used by {@link ProfiledStatement} to log a statement slower than the threshold.
+     * @param sql Take in the {@code String} SQL that ran.
+     * @param nanos Take in the {@code long} nanoseconds it took.
+     * @param parameters Take in the {@code String} shapes of its bind parameters.
+     * @param plan Take in the {@code String} {@code EXPLAIN} plan, or {@code null}.
+     */
+    void slow(String sql, long nanos, List<String> parameters, String plan){
+        SlowQuery query = new SlowQuery(normalize(sql), nanos / 1000, parameters, plan,
+            Thread.currentThread().getName(), System.currentTimeMillis());
+        slowQueries.addFirst(query);
+        if(slowQueryCount.incrementAndGet() > SLOW_QUERY_HISTORY && slowQueries.pollLast() != null){
+            slowQueryCount.decrementAndGet();
+        }
+        System.err.println("Slow SQL (" + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms) " + query.getSql()
+            + " parameters " + parameters + (plan == null ? "" : "\n" + plan));
+    }
+
+    /**
+     * @return {@code List} of statistics for every normalized statement, slowest in total first.
+     */
+    public List<QueryStats> getQueryStats(){
+        List<QueryStats> result = new ArrayList<>(stats.size());
+        for(Stats entry : stats.values()){
+            result.add(entry.snapshot());
+        }
+        result.sort(Comparator.comparingLong(QueryStats::getTotalMicros).reversed());
+        return result;
+    }
+
+    /**
+     * @return {@code List} of the most recent slow queries, newest first.
+     */
+    public List<SlowQuery> getSlowQueries(){
+        return new ArrayList<>(slowQueries);
+    }
+
+    /**
+     * @return {@code long} milliseconds over which a statement is logged as slow.
+     */
+    public long getSlowThresholdMillis(){
+        return TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos);
+    }
+
+    /**
+     * Used to drop every statistic and slow query.
+     */
+    public void reset(){
+        stats.clear();
+        slowQueries.clear();
+        slowQueryCount.set(0);
+    }
+
+    /**
+     * Used to turn SQL into the form statistics are kept under: string and number literals become
+     * {@code ?}, runs of whitespace become one space, and a trailing {@code ;} is dropped.
+     * @param sql Take in the {@code String} SQL.
+     * @return {@code String} normalized SQL.
+     */
+    String normalize(String sql){
+        String cached = normalized.get(sql);
+        if(cached != null){
+            return cached;
+        }
+        String result = normalizeText(sql);
+        if(normalized.size() < MAX_NORMALIZED){
+            normalized.put(sql, result);
+        }
+        return result;
+    }
+
+    static String normalizeText(String sql){
+        StringBuilder out = new StringBuilder(sql.length());
+        int i = 0;
+        int length = sql.length();
+        while(i < length){
+            char c = sql.charAt(i);
+            if(c == '\''){
+                i++;
+                while(i < length){
+                    if(sql.charAt(i) == '\''){
+                        if(i + 1 < length && sql.charAt(i + 1) == '\''){
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                out.append('?');
+            } else if(Character.isDigit(c) && (out.length() == 0 || !isIdentifierPart(out.charAt(out.length() - 1)))){
+                while(i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')){
+                    i++;
+                }
+                out.append('?');
+            } else if(Character.isWhitespace(c)){
+                while(i < length && Character.isWhitespace(sql.charAt(i))){
+                    i++;
+                }
+                if(out.length() > 0){
+                    out.append(' ');
+                }
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        int end = out.length();
+        while(end > 0 && (out.charAt(end - 1) == ';' || out.charAt(end - 1) == ' ')){
+            end--;
+        }
+        out.setLength(end);
+        return out.toString();
+    }
+
+    private static boolean isIdentifierPart(char c){
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * Used to read the H2 plan of a query with the same bind values it ran with.
+     * @param physical Take in the physical {@code Connection} the query ran on.
+     * @param sql Take in the {@code String} SQL.
+     * @param values Take in the bind values, indexed from 1.
+     * @return {@code String} plan, or {@code null} if the plan could not be read.
+     */
+    static String explain(Connection physical, String sql, Object[] values){
+        try{
+            PreparedStatement explain = physical.prepareStatement("EXPLAIN " + sql);
+            try{
+                for(int i = 1; i < values.length; i++){
+                    explain.setObject(i, values[i]);
+                }
+                ResultSet resultSet = explain.executeQuery();
+                StringBuilder plan = new StringBuilder();
+                while(resultSet.next()){
+                    plan.append(resultSet.getString(1));
+                }
+                return plan.toString();
+            } finally {
+                explain.close();
+            }
+        } catch (SQLException e){
+            return null;
+        }
+    }
+
+    /**
+     * Running totals for one normalized statement.
+     */
+    private static class Stats {
+        private final String sql;
+        private final LongAdder errors = new LongAdder();
+        private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+        private final Histogram micros = new Histogram();
+
+        private Stats(String sql){
+            this.sql = sql;
+        }
+
+        private void record(long elapsedMicros, boolean failed){
+            micros.record(elapsedMicros);
+            maxMicros.accumulate(elapsedMicros);
+            if(failed){
+                errors.increment();
+            }
+        }
+
+        private QueryStats snapshot(){
+            return new QueryStats(sql, micros.getCount(), errors.sum(), micros.getSum(), maxMicros.get(),
+                micros.getPercentile(50), micros.getPercentile(95), micros.getPercentile(99));
+        }
+    }
+
+    /**
+     * Statistics of one normalized statement, as served by the admin endpoint. Percentiles are the upper
+     * bound of the power-of-two bucket they fall in.
+     */
+    public static class QueryStats {
+        private final String sql;
+        private final long count;
+        private final long errors;
+        private final long totalMicros;
+        private final long maxMicros;
+        private final long p50Micros;
+        private final long p95Micros;
+        private final long p99Micros;
+
+        QueryStats(String sql, long count, long errors, long totalMicros, long maxMicros,
+                   long p50Micros, long p95Micros, long p99Micros){
+            this.sql = sql;
+            this.count = count;
+            this.errors = errors;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+            this.p50Micros = p50Micros;
+            this.p95Micros = p95Micros;
+            this.p99Micros = p99Micros;
+        }
+
+        public String getSql(){
+            return sql;
+        }
+
+        public long getCount(){
+            return count;
+        }
+
+        public long getErrors(){
+            return errors;
+        }
+
+        public long getTotalMicros(){
+            return totalMicros;
+        }
+
+        public long getMeanMicros(){
+            return count == 0 ? 0 : totalMicros / count;
+        }
+
+        public long getMaxMicros(){
+            return maxMicros;
+        }
+
+        public long getP50Micros(){
+            return p50Micros;
+        }
+
+        public long getP95Micros(){
+            return p95Micros;
+        }
+
+        public long getP99Micros(){
+            return p99Micros;
+        }
+    }
+
+    /**
+     * One statement that ran slower than the threshold.
+     */
+    public static class SlowQuery {
+        private final String sql;
+        private final long micros;
+        private final List<String> parameters;
+        private final String plan;
+        private final String thread;
+        private final long timestamp;
+
+        SlowQuery(String sql, long micros, List<String> parameters, String plan, String thread, long timestamp){
+            this.sql = sql;
+            this.micros = micros;
+            this.parameters = parameters;
+            this.plan = plan;
+            this.thread = thread;
+            this.timestamp = timestamp;
+        }
+
+        public String getSql(){
+            return sql;
+        }
+
+        public long getMicros(){
+            return micros;
+        }
+
+        /**
+         * @return {@code List} of bind parameter shapes such as {@code INT} or {@code VARCHAR(12)}.
+         */
+        public List<String> getParameters(){
+            return parameters;
+        }
+
+        public String getPlan(){
+            return plan;
+        }
+
+        public String getThread(){
+            return thread;
+        }
+
+        public long getTimestamp(){
+            return timestamp;
+        }
+
+        @Override
+        public String toString(){
+            return "SlowQuery{" + sql + ", " + micros + "us, " + parameters + '}';
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A least recently used cache of {@code PreparedStatement}s for one {@link PooledConnection}, keyed by
+ * SQL text. A statement stays prepared on the physical connection for as long as it is cached, so a
+ * DAO that prepares the same SQL again skips H2's parse and plan step entirely.
+ *
+ * A cached statement is checked out to one caller at a time. Preparing SQL whose statement is already
+ * checked out, for example twice within one borrow, gets a plain uncached statement instead. Checking a
+ * statement back in closes the result it still has open and clears its parameters, so nothing the last
+ * caller read or bound is held on to while the statement sits in the cache.
+ *
+ * Normally only the thread that currently borrows the connection uses its cache, but the pool's
+ * housekeeping thread clears it when it reclaims a leaked connection, possibly while the borrower is
+ * still using it. The cache is guarded by a {@code ReentrantLock} for that case; otherwise the lock is
+ * never contended. It is not a monitor because it is held across JDBC calls, and a virtual thread that
+ * blocks inside a {@code synchronized} block pins its carrier thread.
+ */
+class StatementCache {
+    /**
+     * Hit, miss and eviction counters shared by every connection of one pool.
+     */
+    static class Stats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+    }
+
+    private final int maxSize;
+    private final Stats stats;
+    private final Map<String, Entry> entries;
+    private final List<PreparedStatement> uncached = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * @param maxSize Take in the {@code int} number of statements to keep prepared.
+     * @param stats Take in the {@code Stats} to count hits, misses and evictions into.
+     */
+    StatementCache(int maxSize, Stats stats){
+        this.maxSize = maxSize;
+        this.stats = stats;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest){
+                if(size() <= StatementCache.this.maxSize){
+                    return false;
+                }
+                StatementCache.this.stats.evictions.increment();
+                Entry entry = eldest.getValue();
+                if(entry.checkedOut){
+                    uncached.add(entry.statement);
+                } else {
+                    closeQuietly(entry.statement);
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Used to prepare a statement through the cache.
+     * @param physical Take in the physical {@code Connection} to prepare on when the cache misses.
+     * @param owner Take in the {@code Connection} proxy that {@code getConnection()} should return.
+     * @param sql Take in the {@code String} SQL to prepare.
+     * @param autoGeneratedKeys Take in {@link Statement#RETURN_GENERATED_KEYS} or
+     * {@link Statement#NO_GENERATED_KEYS}.
+     * @return {@code PreparedStatement} that goes back into the cache when closed or when the connection
+     * is given back to the pool.
+     * @throws SQLException Throws an {@code SQLException} if the statement can not be prepared.
+     */
+    PreparedStatement prepare(Connection physical, Connection owner, String sql, int autoGeneratedKeys)
+        throws SQLException {
+        String key = autoGeneratedKeys == Statement.NO_GENERATED_KEYS ? sql : sql + '\u0000' + autoGeneratedKeys;
+        lock.lock();
+        try{
+            Entry entry = entries.get(key);
+            if(entry != null && !entry.checkedOut){
+                stats.hits.increment();
+                entry.owner = owner;
+                entry.checkedOut = true;
+                return entry.proxy;
+            }
+
+            stats.misses.increment();
+            PreparedStatement statement = physical.prepareStatement(sql, autoGeneratedKeys);
+            if(entry != null){
+                uncached.add(statement);
+                return statement;
+            }
+            entry = new Entry(statement, owner);
+            entry.checkedOut = true;
+            entries.put(key, entry);
+            return entry.proxy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Used when the connection goes back to the pool. Every cached statement is checked back in, and
+     * every uncached or evicted statement is closed.
+     */
+    void checkInAll(){
+        lock.lock();
+        try{
+            for(Entry entry : entries.values()){
+                checkIn(entry);
+            }
+            for(PreparedStatement statement : uncached){
+                closeQuietly(statement);
+            }
+            uncached.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Used to close every statement when the physical connection is discarded.
+     */
+    void clear(){
+        lock.lock();
+        try{
+            Iterator<Entry> iterator = entries.values().iterator();
+            while(iterator.hasNext()){
+                closeQuietly(iterator.next().statement);
+                iterator.remove();
+            }
+            for(PreparedStatement statement : uncached){
+                closeQuietly(statement);
+            }
+            uncached.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Used to give a cached statement back, closing its open result and clearing its parameters.
+     * @param entry Take in the {@code Entry} to check in. Nothing happens if it is not checked out.
+     */
+    private void checkIn(Entry entry){
+        lock.lock();
+        try{
+            if(!entry.checkedOut){
+                return;
+            }
+            entry.checkedOut = false;
+            ResultSet resultSet = entry.statement.getResultSet();
+            if(resultSet != null){
+                resultSet.close();
+            }
+            entry.statement.clearParameters();
+        } catch (SQLException e){
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void closeQuietly(Statement statement){
+        try{
+            statement.close();
+        } catch (SQLException e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A cached statement and the proxy handed to callers. Closing the proxy checks the statement back in
+     * rather than closing it.
+     */
+    private class Entry implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private volatile Connection owner;
+        private volatile boolean checkedOut = false;
+
+        private Entry(PreparedStatement statement, Connection owner){
+            this.statement = statement;
+            this.owner = owner;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                this
+            );
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch(method.getName()){
+                case "close":
+                    checkIn(this);
+                    return null;
+                case "isClosed":
+                    return !checkedOut || statement.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + statement.toString();
+                default:
+                    break;
+            }
+
+            if(!checkedOut){
+                throw new SQLException("Statement is closed");
+            }
+            try{
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e){
+                throw e.getCause();
+            }
+        }
+    }
+}
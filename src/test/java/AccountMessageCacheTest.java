@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Model.Message;
+import Util.AccountMessageCache;
+
+public class AccountMessageCacheTest {
+    AccountMessageCache cache;
+    List<Message> database;
+
+    /**
+     * Before every test, start from an empty cache over an account whose list in the database holds one
+     * message.
+     */
+    @Before
+    public void setUp() {
+        cache = new AccountMessageCache(1 << 20, 100);
+        database = new ArrayList<>();
+        database.add(new Message(1, 1, "test message 1", 1669947792));
+    }
+
+    /**
+     * Adding a message to a list that was loaded before its insert.
+     *
+     * Expected Result:
+     *  The cached list is patched with the new message in place of being read again.
+     */
+    @Test
+    public void addedPatchesListLoadedBeforeInsert() {
+        Assert.assertEquals(1, cache.getOrLoad(1, id -> new ArrayList<>(database)).size());
+        long stamp = cache.getRemovalStamp(1);
+        Message inserted = new Message(2, 1, "test message 2", 1669947793);
+        database.add(inserted);
+        cache.added(inserted, stamp);
+
+        List<Message> messages = cache.getOrLoad(1, id -> {
+            throw new AssertionError("Expected the patched list to be served");
+        });
+        Assert.assertEquals(database, messages);
+        Assert.assertEquals(1, cache.getPatchCount());
+    }
+
+    /**
+     * A message is inserted, a read loads the list with it, the message is deleted, and only then is its
+     * add applied.
+     *
+     * Expected Result:
+     *  The deleted message does not come back into the cached list.
+     */
+    @Test
+    public void addedAfterDeleteDoesNotBringMessageBack() {
+        long stamp = cache.getRemovalStamp(1);
+        Message inserted = new Message(2, 1, "test message 2", 1669947793);
+        database.add(inserted);
+        Assert.assertEquals(2, cache.getOrLoad(1, id -> new ArrayList<>(database)).size());
+
+        database.remove(inserted);
+        cache.removed(inserted);
+        cache.added(inserted, stamp);
+
+        Assert.assertEquals(database, cache.getOrLoad(1, id -> new ArrayList<>(database)));
+    }
+
+    /**
+     * A message is inserted, edited, a read loads the list with the edit, and only then is its add applied.
+     *
+     * Expected Result:
+     *  The cached list keeps the edited text.
+     */
+    @Test
+    public void addedAfterEditKeepsEditedText() {
+        long stamp = cache.getRemovalStamp(1);
+        Message inserted = new Message(2, 1, "test message 2", 1669947793);
+        database.add(new Message(2, 1, "updated message", 1669947793));
+        cache.invalidate(1);
+        Assert.assertEquals(2, cache.getOrLoad(1, id -> new ArrayList<>(database)).size());
+
+        cache.added(inserted, stamp);
+
+        List<Message> messages = cache.getOrLoad(1, id -> new ArrayList<>(database));
+        Assert.assertEquals(database, messages);
+        Assert.assertEquals("updated message", messages.get(1).getMessage_text());
+    }
+
+    /**
+     * A message is inserted and deleted before any read, and its add is applied to a list loaded after.
+     *
+     * Expected Result:
+     *  The list is dropped instead of patched, so the deleted message is not added.
+     */
+    @Test
+    public void addedAfterDeleteOfUnreadMessageDropsList() {
+        long stamp = cache.getRemovalStamp(1);
+        Message inserted = new Message(2, 1, "test message 2", 1669947793);
+        cache.removed(inserted);
+        Assert.assertEquals(1, cache.getOrLoad(1, id -> new ArrayList<>(database)).size());
+
+        cache.added(inserted, stamp);
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(database, cache.getOrLoad(1, id -> new ArrayList<>(database)));
+    }
+}
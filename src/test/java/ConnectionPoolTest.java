@@ -0,0 +1,127 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    JdbcDataSource dataSource;
+    ConnectionPool pool;
+
+    /**
+     * Before every test, point a data source at a private in-memory database, so the pools built by the
+     * tests do not share connections with the application's pool.
+     */
+    @Before
+    public void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:connection_pool_test;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+    }
+
+    @After
+    public void tearDown() {
+        if(pool != null){
+            pool.close();
+        }
+    }
+
+    /**
+     * Borrowing from a pool of one connection while that connection is held.
+     *
+     * Expected Result:
+     *  The second borrow fails with an SQLTimeoutException once the acquire timeout passes, and succeeds
+     *  again after the first connection is given back.
+     */
+    @Test
+    public void getConnectionTimesOutWhenPoolIsExhausted() throws SQLException {
+        pool = new ConnectionPool(dataSource, 0, 1, 200, 60000, 4);
+        Connection held = pool.getConnection();
+
+        long start = System.nanoTime();
+        try{
+            pool.getConnection();
+            Assert.fail("Expected the borrow to time out");
+        } catch (SQLTimeoutException e){
+            Assert.assertTrue((System.nanoTime() - start) / 1_000_000 >= 150);
+        }
+
+        held.close();
+        Connection next = pool.getConnection();
+        Assert.assertEquals(1, pool.getActiveCount());
+        next.close();
+        Assert.assertEquals(0, pool.getActiveCount());
+    }
+
+    /**
+     * Holding a connection past the leak threshold with reclaiming on.
+     *
+     * Expected Result:
+     *  The leak is counted and reclaimed, the leaked connection can no longer be used, and its slot can
+     *  be borrowed again.
+     */
+    @Test
+    public void leakedConnectionIsReclaimed() throws SQLException, InterruptedException {
+        pool = new ConnectionPool(dataSource, 0, 1, 200, 60000, 4);
+        pool.enableLeakDetection(100, true, true);
+        Connection leaked = pool.getConnection();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(pool.getReclaimedCount() == 0 && System.currentTimeMillis() < deadline){
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(1, pool.getLeakCount());
+        Assert.assertEquals(1, pool.getReclaimedCount());
+        Assert.assertTrue(leaked.isClosed());
+        try{
+            leaked.prepareStatement("SELECT 1");
+            Assert.fail("Expected the reclaimed connection to be closed");
+        } catch (SQLException e){
+            Assert.assertEquals("Connection is closed", e.getMessage());
+        }
+
+        Connection next = pool.getConnection();
+        Assert.assertFalse(next.isClosed());
+        next.close();
+    }
+
+    /**
+     * Preparing the same SQL twice, and then more distinct SQL than the statement cache holds, on a pool
+     * of one connection.
+     *
+     * Expected Result:
+     *  The second prepare is a hit, checking a statement back in closes the result it left open, and
+     *  the least recently used statement is evicted once the cache is full.
+     */
+    @Test
+    public void statementCacheHitsAndEvicts() throws SQLException {
+        pool = new ConnectionPool(dataSource, 0, 1, 200, 60000, 2);
+        Connection connection = pool.getConnection();
+
+        PreparedStatement first = connection.prepareStatement("SELECT 1");
+        ResultSet resultSet = first.executeQuery();
+        first.close();
+        Assert.assertTrue(resultSet.isClosed());
+        connection.prepareStatement("SELECT 1").close();
+        Assert.assertEquals(1, pool.getStatementCacheHits());
+        Assert.assertEquals(1, pool.getStatementCacheMisses());
+
+        connection.prepareStatement("SELECT 2").close();
+        connection.prepareStatement("SELECT 3").close();
+        Assert.assertEquals(3, pool.getStatementCacheMisses());
+        Assert.assertEquals(1, pool.getStatementCacheEvictions());
+
+        connection.prepareStatement("SELECT 1").close();
+        Assert.assertEquals(4, pool.getStatementCacheMisses());
+        connection.close();
+    }
+}
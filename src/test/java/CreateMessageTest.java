@@ -3,6 +3,14 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -12,7 +20,11 @@ import org.junit.Test;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import DAO.MessageGroupCommitter;
 import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
 import Util.ConnectionUtil;
 import io.javalin.Javalin;
 
@@ -149,4 +161,85 @@ public class CreateMessageTest {
     }
 
 
+
+    /**
+     * Sending many http requests to POST localhost:8080/messages at once with group commit turned on
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of each message with its own ID, all of which are then listed
+     *  for the account, and the batch sizes are exported on /metrics
+     */
+    @Test
+    public void createMessageConcurrentlyWithGroupCommit() throws IOException, InterruptedException {
+        MessageService.getInstance().setGroupCommitter(new MessageGroupCommitter(new MessageDAO(), 64, 5000));
+        try{
+            List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+            for(int i = 0; i < 20; i++){
+                HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/messages"))
+                        .POST(HttpRequest.BodyPublishers.ofString("{"+
+                                "\"posted_by\":1, " +
+                                "\"message_text\": \"group message " + i + "\", " +
+                                "\"time_posted_epoch\": 1669947792}"))
+                        .header("Content-Type", "application/json")
+                        .build();
+                responses.add(webClient.sendAsync(postMessageRequest, HttpResponse.BodyHandlers.ofString()));
+            }
+            Set<Integer> ids = new HashSet<>();
+            for(CompletableFuture<HttpResponse<String>> response : responses){
+                Assert.assertEquals(200, response.join().statusCode());
+                Message actualResult = objectMapper.readValue(response.join().body(), Message.class);
+                Assert.assertTrue(actualResult.getMessage_text().startsWith("group message "));
+                ids.add(actualResult.getMessage_id());
+            }
+            Assert.assertEquals(20, ids.size());
+
+            HttpRequest accountRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                    .build();
+            HttpResponse<String> response = webClient.send(accountRequest, HttpResponse.BodyHandlers.ofString());
+            Message[] messages = objectMapper.readValue(response.body(), Message[].class);
+            Assert.assertEquals(21, messages.length);
+
+            HttpRequest metricsRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/metrics"))
+                    .build();
+            String metrics = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString()).body();
+            Assert.assertTrue(metrics.contains("message_batch_size_count{batch=\"group_commit\"}"));
+        } finally {
+            MessageService.getInstance().setGroupCommitter(null);
+        }
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages for an account that the account index still
+     * lists but that was deleted from the database behind it, so only the insert itself can tell
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body:
+     */
+    @Test
+    public void createMessageAccountDeletedBehindIndex() throws IOException, InterruptedException, SQLException {
+        Assert.assertTrue(AccountService.getInstance().checkAccountExist(1));
+        try(Connection connection = ConnectionUtil.getConnection();
+            Statement statement = connection.createStatement()){
+            statement.executeUpdate("DELETE FROM message WHERE posted_by = 1");
+            statement.executeUpdate("DELETE FROM account WHERE account_id = 1");
+        }
+        Assert.assertTrue(AccountService.getInstance().checkAccountExist(1));
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("", response.body());
+    }
 }
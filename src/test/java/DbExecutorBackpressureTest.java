@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.DbExecutor;
+import io.javalin.Javalin;
+
+public class DbExecutorBackpressureTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    DbExecutor dbExecutor;
+    CountDownLatch release;
+
+    /**
+     * Before every test, reset the database, and restart the Javalin app on a database executor of one
+     * thread and a queue of one task, which are both taken by tasks that wait for the test to release them.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        dbExecutor = new DbExecutor(1, 1);
+        release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        dbExecutor.submit(() -> {
+            running.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+        dbExecutor.submit(() -> release.await(10, TimeUnit.SECONDS));
+
+        socialMediaController = new SocialMediaController(AccountService.getInstance(),
+            MessageService.getInstance(), dbExecutor);
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 while the database executor and its queue
+     * are full, and again once they drain.
+     *
+     * Expected Response:
+     *  Status Code: 503 with a Retry-After header, then 200
+     *  Response Body: JSON representation of message with ID 1 once the executor has drained
+     */
+    @Test
+    public void getMessageRefusedWhileExecutorIsFull() throws IOException, InterruptedException {
+        HttpRequest getMessage = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        HttpResponse<String> refused = webClient.send(getMessage, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(503, refused.statusCode());
+        Assert.assertEquals("1", refused.headers().firstValue("Retry-After").orElse(null));
+        Assert.assertEquals(1, dbExecutor.getRejectedCount());
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while((dbExecutor.getActiveCount() > 0 || dbExecutor.getQueueDepth() > 0)
+                && System.currentTimeMillis() < deadline){
+            Thread.sleep(20);
+        }
+
+        HttpResponse<String> served = webClient.send(getMessage, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, served.statusCode());
+        Assert.assertTrue(served.body().contains("\"message_id\":1"));
+    }
+}
@@ -8,6 +8,9 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -18,6 +21,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import Controller.SocialMediaController;
+import DAO.MessageDAO;
 import Model.Message;
 import Util.ConnectionUtil;
 import io.javalin.Javalin;
@@ -99,6 +103,80 @@ public class RetrieveAllMessagesTest {
 
 
 
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=true
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON represenation of a list of message objects, streamed
+     */
+    @Test
+    public void getAllMessagesStreamed() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=true"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        List<Message> actualResult = objectMapper.readValue(response.body().toString(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+
+
+    /**
+     * Streaming the messages from more readers at once than the stream cap, half of the pool, while every
+     * reader stalls on its first message.
+     *
+     * Expected Result:
+     *  Only half the pool is held by streams, the reader over the cap waits for a slot, and every stream
+     *  finishes once the readers go on.
+     */
+    @Test
+    public void streamAllMessagesCapsConnectionsHeld() throws InterruptedException {
+        int cap = ConnectionUtil.getPool().getMaxSize() / 2;
+        int activeBefore = ConnectionUtil.getPool().getActiveCount();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger streaming = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        List<Thread> readers = new ArrayList<>();
+        for(int i = 0; i <= cap; i++){
+            Thread reader = new Thread(() -> {
+                boolean done = new MessageDAO().streamAllMessage(message -> {
+                    streaming.incrementAndGet();
+                    try{
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                if(done){
+                    finished.incrementAndGet();
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(streaming.get() < cap && System.currentTimeMillis() < deadline){
+            Thread.sleep(20);
+        }
+        Thread.sleep(200);
+        Assert.assertEquals(cap, streaming.get());
+        Assert.assertEquals(activeBefore + cap, ConnectionUtil.getPool().getActiveCount());
+
+        release.countDown();
+        for(Thread reader : readers){
+            reader.join(10000);
+        }
+        Assert.assertEquals(cap + 1, finished.get());
+    }
+
     private void removeInitialMessage(){
         try {
                 Connection conn = ConnectionUtil.getConnection();
@@ -3,16 +3,27 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import Controller.SocialMediaController;
+import DAO.MessageBatchLoader;
+import DAO.MessageDAO;
 import Model.Message;
+import Service.MessageService;
 import Util.ConnectionUtil;
 import io.javalin.Javalin;
 
@@ -86,5 +97,135 @@ public class RetrieveMessageByMessageIdTest {
         Assert.assertTrue(response.body().toString().isEmpty());
     }
 
+    /**
+     * Sending an http request to GET localhost:8080/messages/1, then PATCH localhost:8080/messages/1 and
+     * GET localhost:8080/messages/1 again
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON represenation of the edited message on the second read
+     */
+    @Test
+    public void getMessageGivenMessageIdAfterUpdate() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Message expectedResult = new Message(1, 1, "updated message", 1669947792);
+        Message actualResult = objectMapper.readValue(response.body(), Message.class);
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending many http requests to PATCH localhost:8080/messages/1 at once, with GET localhost:8080/messages/1
+     * and GET localhost:8080/accounts/1/messages in between, then reading both again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON of the message as the last committed edit left it, from both endpoints
+     */
+    @Test
+    public void getMessageGivenMessageIdAfterConcurrentUpdates() throws IOException, InterruptedException, SQLException {
+        HttpRequest messageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        HttpRequest accountRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for(int i = 0; i < 20; i++){
+            HttpRequest patchRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/1"))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"edit " + i + "\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            responses.add(webClient.sendAsync(patchRequest, HttpResponse.BodyHandlers.ofString()));
+            responses.add(webClient.sendAsync(messageRequest, HttpResponse.BodyHandlers.ofString()));
+            responses.add(webClient.sendAsync(accountRequest, HttpResponse.BodyHandlers.ofString()));
+        }
+        for(CompletableFuture<HttpResponse<String>> response : responses){
+            Assert.assertEquals(200, response.join().statusCode());
+        }
+
+        String committed;
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement ps = connection.prepareStatement("SELECT message_text FROM message WHERE message_id = 1")){
+            ResultSet resultSet = ps.executeQuery();
+            Assert.assertTrue(resultSet.next());
+            committed = resultSet.getString(1);
+        }
+        Message expectedResult = new Message(1, 1, committed, 1669947792);
+
+        HttpResponse<String> response = webClient.send(messageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(expectedResult, objectMapper.readValue(response.body(), Message.class));
+        response = webClient.send(accountRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(expectedResult), actualResult);
+    }
 
+    /**
+     * Sending many http requests to GET localhost:8080/messages/{message_id} at once, for messages that exist
+     * and one that does not, with batch loading turned on
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON represenation of each requested message, or empty for the one that does not exist,
+     *  and the batch sizes are exported on /metrics
+     */
+    @Test
+    public void getMessageGivenMessageIdConcurrentlyWithBatchLoad() throws IOException, InterruptedException {
+        MessageService.getInstance().setBatchLoader(new MessageBatchLoader(new MessageDAO(), 64, 5000));
+        try{
+            for(int i = 2; i <= 6; i++){
+                HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/messages"))
+                        .POST(HttpRequest.BodyPublishers.ofString("{"+
+                                "\"posted_by\":1, " +
+                                "\"message_text\": \"batch message " + i + "\", " +
+                                "\"time_posted_epoch\": 1669947792}"))
+                        .header("Content-Type", "application/json")
+                        .build();
+                Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+            }
+
+            List<Integer> ids = List.of(1, 2, 3, 4, 5, 6, 99, 3, 6);
+            List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+            for(int id : ids){
+                HttpRequest request = HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/messages/" + id))
+                        .build();
+                responses.add(webClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+            }
+            for(int i = 0; i < ids.size(); i++){
+                int id = ids.get(i);
+                HttpResponse<String> response = responses.get(i).join();
+                Assert.assertEquals(200, response.statusCode());
+                if(id == 99){
+                    Assert.assertTrue(response.body().isEmpty());
+                    continue;
+                }
+                Message expectedResult = new Message(id, 1, id == 1 ? "test message 1" : "batch message " + id, 1669947792);
+                Assert.assertEquals(expectedResult, objectMapper.readValue(response.body(), Message.class));
+            }
+
+            HttpRequest metricsRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/metrics"))
+                    .build();
+            String metrics = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString()).body();
+            Assert.assertTrue(metrics.contains("message_batch_size_count{batch=\"load\"}"));
+        } finally {
+            MessageService.getInstance().setBatchLoader(null);
+        }
+    }
 }
@@ -0,0 +1,71 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/metrics after GET localhost:8080/messages/1
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text with the route's request count and latency, and the DAO timer
+     */
+    @Test
+    public void getMetricsAfterRequest() throws IOException, InterruptedException {
+        HttpRequest getMessage = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        Assert.assertEquals(200, webClient.send(getMessage, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest getMetrics = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(getMetrics, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+
+        String body = response.body();
+        Assert.assertTrue(body.contains("# TYPE http_requests_total counter"));
+        Assert.assertTrue(body.contains("http_requests_total{method=\"GET\",route=\"/messages/{message_id}\",status=\"200\"}"));
+        Assert.assertTrue(body.contains("http_request_duration_seconds_count{method=\"GET\",route=\"/messages/{message_id}\"}"));
+        Assert.assertTrue(body.contains("dao_call_duration_seconds_bucket{dao=\"AccountDAO\",method=\"loadAccountIDs\",le=\"+Inf\"}"));
+        Assert.assertTrue(body.contains("db_pool_connections_max 10"));
+        Assert.assertTrue(body.contains("singleflight_coalesced_total{load=\"message\"}"));
+        Assert.assertTrue(body.contains("jvm_memory_bytes_used{area=\"heap\"}"));
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveSqlProfileTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/admin/sql after DELETE localhost:8080/admin/sql and
+     * GET localhost:8080/accounts/1/messages
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON with one entry for the normalized account query, counted once
+     */
+    @Test
+    public void getSqlProfileAfterRequest() throws IOException, InterruptedException {
+        HttpRequest resetProfile = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/sql"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(204, webClient.send(resetProfile, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest getMessages = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        Assert.assertEquals(200, webClient.send(getMessages, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest getProfile = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/sql"))
+                .build();
+        HttpResponse<String> response = webClient.send(getProfile, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        JsonNode profile = objectMapper.readTree(response.body());
+        JsonNode accountQuery = null;
+        for(JsonNode query : profile.get("queries")){
+            if(query.get("sql").asText().equals("SELECT * FROM message WHERE posted_by = ? ORDER BY message_id")){
+                accountQuery = query;
+            }
+        }
+        Assert.assertNotNull(accountQuery);
+        Assert.assertEquals(1, accountQuery.get("count").asLong());
+        Assert.assertEquals(0, accountQuery.get("errors").asLong());
+        Assert.assertTrue(profile.get("slow_queries").isArray());
+    }
+}
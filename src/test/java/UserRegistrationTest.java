@@ -3,6 +3,9 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -95,6 +98,37 @@ public class UserRegistrationTest {
 
     }
 
+    /**
+     * Sending many http requests to POST localhost:8080/register at once for the same username
+     * 
+     * Expected Response:
+     *  Exactly one Status Code: 200, every other Status Code: 400
+     */
+    @Test
+    public void registerUserDuplicateUsernameConcurrently() throws InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"user\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for(int i = 0; i < 16; i++){
+            responses.add(webClient.sendAsync(postRequest, HttpResponse.BodyHandlers.ofString()));
+        }
+        int created = 0;
+        for(CompletableFuture<HttpResponse<String>> response : responses){
+            int status = response.join().statusCode();
+            if(status == 200){
+                created++;
+            } else {
+                Assert.assertEquals(400, status);
+            }
+        }
+        Assert.assertEquals(1, created);
+    }
+
     /**
      * Sending an http request to POST localhost:8080/register when no username provided
      * 